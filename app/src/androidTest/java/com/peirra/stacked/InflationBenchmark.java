@@ -0,0 +1,94 @@
+package com.peirra.stacked;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.support.v4.content.ContextCompat;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import java.util.Locale;
+
+/**
+ * Startup cost of creating 1,000 stacked cells ({@code R.layout.stacked_cell}): inflated with cold
+ * attribute caches, inflated with warm caches and built in code. Results are logged under the
+ * {@code InflationBenchmark} tag, e.g. {@code adb logcat -s InflationBenchmark}.
+ */
+public class InflationBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "InflationBenchmark";
+    private static final int CELLS = 1000;
+
+    private Context context;
+    private FrameLayout parent;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        context = new ContextThemeWrapper(getContext(), R.style.AppTheme);
+        parent = new FrameLayout(context);
+        // warm up class loading and the resource caches that are not ours
+        LayoutInflater.from(context).inflate(R.layout.stacked_cell, parent, false);
+    }
+
+    public void testInflate_uncached() throws Exception {
+        final LayoutInflater inflater = LayoutInflater.from(context);
+        long total = 0;
+        for (int i = 0; i < CELLS; i++) {
+            CachedAttributes.clear();
+            final long start = System.nanoTime();
+            final View cell = inflater.inflate(R.layout.stacked_cell, parent, false);
+            total += System.nanoTime() - start;
+            assertNotNull(cell);
+        }
+        report("inflate, cold attribute cache", total);
+    }
+
+    public void testInflate_cached() throws Exception {
+        final LayoutInflater inflater = LayoutInflater.from(context);
+        final long start = System.nanoTime();
+        for (int i = 0; i < CELLS; i++) {
+            assertNotNull(inflater.inflate(R.layout.stacked_cell, parent, false));
+        }
+        report("inflate, warm attribute cache", System.nanoTime() - start);
+    }
+
+    public void testBuild() throws Exception {
+        final float density = context.getResources().getDisplayMetrics().density;
+        final int width = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 110, context.getResources().getDisplayMetrics());
+        final StackSpec spec = new StackSpec.Builder()
+                .setFrameColor(0xffffffff)
+                .setFramePadding(4 * density)
+                .setFrameCount(3)
+                .setScaleType(ImageView.ScaleType.CENTER_CROP)
+                .build();
+        final Drawable.ConstantState poster = ContextCompat.getDrawable(context, R.drawable.poster).getConstantState();
+        final long start = System.nanoTime();
+        for (int i = 0; i < CELLS; i++) {
+            final AspectRatioFrameLayout cell = new AspectRatioFrameLayout.Builder(context)
+                    .setAspectRatio(0.75f)
+                    .setSinglePassMeasure(true)
+                    .build();
+            cell.setLayoutParams(new FrameLayout.LayoutParams(width, FrameLayout.LayoutParams.WRAP_CONTENT));
+            final StackedLayout stack = new StackedLayout.Builder(context)
+                    .setFrameColor(0xffffffff)
+                    .setFramePadding(8 * density)
+                    .setFrameCount(6)
+                    .build();
+            final StackedImageView image = new StackedImageView(context, spec);
+            image.setImageDrawable(poster.newDrawable(context.getResources()));
+            stack.addView(image, new StackedLayout.LayoutParams(StackedLayout.LayoutParams.MATCH_PARENT, StackedLayout.LayoutParams.MATCH_PARENT));
+            cell.addView(stack, new FrameLayout.LayoutParams(FrameLayout.LayoutParams.MATCH_PARENT, FrameLayout.LayoutParams.MATCH_PARENT));
+        }
+        report("builders", System.nanoTime() - start);
+    }
+
+    private static void report(String name, long nanos) {
+        Log.i(TAG, String.format(Locale.US, "%s: %d cells in %.1fms, %.1fus per cell", name, CELLS, nanos / 1e6, nanos / 1e3 / CELLS));
+    }
+}
@@ -5,7 +5,7 @@ package com.peirra.stacked;
  */
 
 import android.content.Context;
-import android.content.res.TypedArray;
+import android.graphics.Canvas;
 import android.util.AttributeSet;
 import android.widget.FrameLayout;
 
@@ -22,7 +22,9 @@ public final class AspectRatioFrameLayout extends FrameLayout {
 
     private float aspectRatio = 1.3333f;
     //This tolerance allows the view to occupy the whole of the screen when the requested aspect ratio is very close, but not exactly equal to, the aspect ratio of the screen
-    private float maxRatioDeformation = 0.01f;
+    private float maxRatioDeformation = MAX_ASPECT_RATIO_DEFORMATION_FRACTION;
+    private boolean singlePassMeasure;
+    private final AspectRatioMeasure ratioMeasure = new AspectRatioMeasure();
 
     public AspectRatioFrameLayout(Context context) {
         super(context);
@@ -39,11 +41,18 @@ public final class AspectRatioFrameLayout extends FrameLayout {
         init(attrs, defStyle);
     }
 
+    private AspectRatioFrameLayout(Context context, Builder builder) {
+        super(context);
+        aspectRatio = builder.aspectRatio;
+        maxRatioDeformation = builder.aspectThreshold;
+        singlePassMeasure = builder.singlePassMeasure;
+    }
+
     private void init(AttributeSet attrs, int defStyle) {
-        final TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.StackedLayout, defStyle, 0);
+        final CachedAttributes a = CachedAttributes.obtain(getContext(), attrs, R.styleable.AspectRatioFrameLayout, defStyle, 0);
         aspectRatio = a.getFloat(R.styleable.AspectRatioFrameLayout_aspectRatio, aspectRatio);
         maxRatioDeformation = a.getFloat(R.styleable.AspectRatioFrameLayout_aspectThreshold, maxRatioDeformation);
-        a.recycle();
+        singlePassMeasure = a.getBoolean(R.styleable.AspectRatioFrameLayout_singlePassMeasure, singlePassMeasure);
         setAspectRatio(aspectRatio);
     }
 
@@ -60,30 +69,102 @@ public final class AspectRatioFrameLayout extends FrameLayout {
         }
     }
 
+    /**
+     * When enabled the constrained size is derived from the incoming measure specs, so the children are
+     * measured once instead of twice whenever the aspect ratio has to be enforced. This assumes the
+     * children fill the layout, as match_parent children do.
+     */
+    public void setSinglePassMeasure(boolean singlePassMeasure) {
+        if (this.singlePassMeasure != singlePassMeasure) {
+            this.singlePassMeasure = singlePassMeasure;
+            requestLayout();
+        }
+    }
+
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (!StackedMetrics.ENABLED) {
+            measureWithRatio(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        final long start = StackedMetrics.begin(StackedMetrics.ASPECT_RATIO_FRAME_LAYOUT, StackedMetrics.MEASURE);
+        measureWithRatio(widthMeasureSpec, heightMeasureSpec);
+        StackedMetrics.end(StackedMetrics.ASPECT_RATIO_FRAME_LAYOUT, StackedMetrics.MEASURE, start);
+    }
+
+    private void measureWithRatio(int widthMeasureSpec, int heightMeasureSpec) {
+        if (singlePassMeasure && ratioMeasure.resolveSpecs(widthMeasureSpec, heightMeasureSpec, aspectRatio, maxRatioDeformation)) {
+            super.onMeasure(MeasureSpec.makeMeasureSpec(ratioMeasure.getWidth(), MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(ratioMeasure.getHeight(), MeasureSpec.EXACTLY));
+            return;
+        }
         super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-        if (aspectRatio == 0) {
-            // Aspect ratio not set.
+        if (!ratioMeasure.resolve(getMeasuredWidth(), getMeasuredHeight(), aspectRatio, maxRatioDeformation)) {
             return;
         }
+        super.onMeasure(MeasureSpec.makeMeasureSpec(ratioMeasure.getWidth(), MeasureSpec.EXACTLY),
+                MeasureSpec.makeMeasureSpec(ratioMeasure.getHeight(), MeasureSpec.EXACTLY));
+    }
 
-        int width = getMeasuredWidth();
-        int height = getMeasuredHeight();
-        float viewAspectRatio = (float) width / height;
-        float aspectDeformation = aspectRatio / viewAspectRatio - 1;
-        if (Math.abs(aspectDeformation) <= MAX_ASPECT_RATIO_DEFORMATION_FRACTION) {
-            // We're within the allowed tolerance.
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        if (!StackedMetrics.ENABLED) {
+            super.onLayout(changed, left, top, right, bottom);
             return;
         }
+        final long start = StackedMetrics.begin(StackedMetrics.ASPECT_RATIO_FRAME_LAYOUT, StackedMetrics.LAYOUT);
+        super.onLayout(changed, left, top, right, bottom);
+        StackedMetrics.end(StackedMetrics.ASPECT_RATIO_FRAME_LAYOUT, StackedMetrics.LAYOUT, start);
+    }
 
-        if (aspectDeformation > 0) {
-            height = (int) (width / aspectRatio);
-        } else {
-            width = (int) (height * aspectRatio);
+    /**
+     * The draw time recorded for this layout includes its children.
+     */
+    @Override
+    protected void dispatchDraw(Canvas canvas) {
+        if (!StackedMetrics.ENABLED) {
+            super.dispatchDraw(canvas);
+            return;
         }
-        super.onMeasure(MeasureSpec.makeMeasureSpec(width, MeasureSpec.EXACTLY),
-                MeasureSpec.makeMeasureSpec(height, MeasureSpec.EXACTLY));
+        final long start = StackedMetrics.begin(StackedMetrics.ASPECT_RATIO_FRAME_LAYOUT, StackedMetrics.DRAW);
+        super.dispatchDraw(canvas);
+        StackedMetrics.countDraw(StackedMetrics.ASPECT_RATIO_FRAME_LAYOUT, 0, 0);
+        StackedMetrics.end(StackedMetrics.ASPECT_RATIO_FRAME_LAYOUT, StackedMetrics.DRAW, start);
     }
 
+    /**
+     * Creates layouts in code without resolving any XML attributes or styles.
+     */
+    public static final class Builder {
+        private final Context context;
+        private float aspectRatio = 1.3333f;
+        private float aspectThreshold = MAX_ASPECT_RATIO_DEFORMATION_FRACTION;
+        private boolean singlePassMeasure;
+
+        public Builder(Context context) {
+            this.context = context;
+        }
+
+        /**
+         * @param widthHeightRatio The width to height ratio.
+         */
+        public Builder setAspectRatio(float widthHeightRatio) {
+            this.aspectRatio = widthHeightRatio;
+            return this;
+        }
+
+        public Builder setAspectThreshold(float aspectThreshold) {
+            this.aspectThreshold = aspectThreshold;
+            return this;
+        }
+
+        public Builder setSinglePassMeasure(boolean singlePassMeasure) {
+            this.singlePassMeasure = singlePassMeasure;
+            return this;
+        }
+
+        public AspectRatioFrameLayout build() {
+            return new AspectRatioFrameLayout(context, this);
+        }
+    }
 }
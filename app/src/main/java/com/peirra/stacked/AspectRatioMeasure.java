@@ -0,0 +1,85 @@
+package com.peirra.stacked;
+
+/**
+ * Pure-Java aspect ratio math used by {@link AspectRatioFrameLayout}.
+ * <p>
+ * Instances are reused across measure passes so resolving a size does not allocate.
+ */
+public final class AspectRatioMeasure {
+
+    // same values as android.view.View.MeasureSpec
+    private static final int MODE_MASK = 0x3 << 30;
+    private static final int UNSPECIFIED = 0;
+
+    private int width;
+    private int height;
+
+    /**
+     * Shrinks one side of the natural size so it satisfies the requested aspect ratio.
+     *
+     * @param width       natural width
+     * @param height      natural height
+     * @param aspectRatio requested width to height ratio, 0 disables the constraint
+     * @param threshold   fractional deformation below which the natural size is kept
+     * @return true if the size changed and the view has to be measured again with {@link #getWidth()}
+     * and {@link #getHeight()}
+     */
+    public boolean resolve(int width, int height, float aspectRatio, float threshold) {
+        this.width = width;
+        this.height = height;
+        if (aspectRatio == 0) {
+            // Aspect ratio not set.
+            return false;
+        }
+
+        float viewAspectRatio = (float) width / height;
+        float aspectDeformation = aspectRatio / viewAspectRatio - 1;
+        if (Math.abs(aspectDeformation) <= threshold) {
+            // We're within the allowed tolerance.
+            return false;
+        }
+
+        if (aspectDeformation > 0) {
+            this.height = (int) (width / aspectRatio);
+        } else {
+            this.width = (int) (height * aspectRatio);
+        }
+        return true;
+    }
+
+    /**
+     * Derives the constrained size directly from the incoming measure specs, so the content only has to be
+     * measured once with EXACTLY specs of {@link #getWidth()} x {@link #getHeight()}. Assumes the content
+     * fills the space it is offered, as match_parent children do.
+     *
+     * @return false if the specs don't bound the size (both unspecified) or no aspect ratio is set, the
+     * caller then has to measure its content to learn its natural size
+     */
+    public boolean resolveSpecs(int widthMeasureSpec, int heightMeasureSpec, float aspectRatio, float threshold) {
+        if (aspectRatio == 0) {
+            return false;
+        }
+        final int widthMode = widthMeasureSpec & MODE_MASK;
+        final int heightMode = heightMeasureSpec & MODE_MASK;
+        if (widthMode == UNSPECIFIED && heightMode == UNSPECIFIED) {
+            return false;
+        }
+        int width = widthMeasureSpec & ~MODE_MASK;
+        int height = heightMeasureSpec & ~MODE_MASK;
+        if (widthMode == UNSPECIFIED) {
+            width = (int) (height * aspectRatio);
+        } else if (heightMode == UNSPECIFIED) {
+            height = (int) (width / aspectRatio);
+        }
+        resolve(width, height, aspectRatio, threshold);
+        return true;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,253 @@
+package com.peirra.stacked;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.drawable.ColorDrawable;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Resolved values of a styleable, cached so inflating the same view many times only resolves its
+ * attributes once.
+ * <p>
+ * Entries are keyed by the theme, the default style attribute and resource, the styleable and the raw
+ * values of the attributes of the styleable found in the {@link AttributeSet} (plus its {@code style}), so
+ * two elements of the same layout or of layouts using the same values share an entry. The getters mirror
+ * {@link TypedArray}. Drawables are cached as their {@link Drawable.ConstantState} and every call to
+ * {@link #getDrawable(int)} returns a new instance.
+ * <p>
+ * Themes are tracked by identity, together with the {@link Configuration} of their resources: the entries
+ * of a theme are dropped as soon as that configuration changes, so dimensions and colors follow rotation,
+ * locale, font scale or night mode changes handled in place. See {@link #clear()} for theme changes. Only
+ * use from the main thread.
+ */
+final class CachedAttributes {
+
+    private static final int MAX_ENTRIES_PER_THEME = 64;
+
+    private static final Map<Resources.Theme, ThemeEntries> sCache = new WeakHashMap<Resources.Theme, ThemeEntries>();
+
+    private final Resources resources;
+    private final boolean[] hasValue;
+    private final boolean[] isFloat;
+    private final boolean[] isColor;
+    private final int[] ints;
+    private final float[] floats;
+    private final Drawable.ConstantState[] drawables;
+
+    private CachedAttributes(Resources resources, TypedArray a, int length) {
+        this.resources = resources;
+        hasValue = new boolean[length];
+        isFloat = new boolean[length];
+        isColor = new boolean[length];
+        ints = new int[length];
+        floats = new float[length];
+        drawables = new Drawable.ConstantState[length];
+        final TypedValue value = new TypedValue();
+        for (int i = 0; i < length; i++) {
+            if (!a.getValue(i, value)) {
+                continue;
+            }
+            hasValue[i] = true;
+            if (value.type == TypedValue.TYPE_DIMENSION) {
+                isFloat[i] = true;
+                floats[i] = a.getDimension(i, 0);
+            } else if (value.type == TypedValue.TYPE_FLOAT) {
+                isFloat[i] = true;
+                floats[i] = value.getFloat();
+            } else if (value.type >= TypedValue.TYPE_FIRST_INT && value.type <= TypedValue.TYPE_LAST_INT) {
+                isColor[i] = value.type >= TypedValue.TYPE_FIRST_COLOR_INT && value.type <= TypedValue.TYPE_LAST_COLOR_INT;
+                ints[i] = value.data;
+            } else if (value.type == TypedValue.TYPE_STRING) {
+                // a file: either a color state list or a drawable, keep whichever resolves
+                try {
+                    ints[i] = a.getColor(i, 0);
+                } catch (RuntimeException e) {
+                    ints[i] = 0;
+                }
+                try {
+                    final Drawable drawable = a.getDrawable(i);
+                    drawables[i] = drawable != null ? drawable.getConstantState() : null;
+                } catch (RuntimeException e) {
+                    drawables[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the resolved attributes, resolving and caching them on a miss.
+     */
+    static CachedAttributes obtain(Context context, AttributeSet attrs, int[] styleable, int defStyleAttr,
+                                   int defStyleRes) {
+        final Resources.Theme theme = context.getTheme();
+        final Key key = new Key(attrs, styleable, defStyleAttr, defStyleRes);
+        ThemeEntries entries = sCache.get(theme);
+        if (entries == null) {
+            entries = new ThemeEntries();
+            sCache.put(theme, entries);
+        }
+        entries.follow(context.getResources().getConfiguration());
+        CachedAttributes cached = entries.get(key);
+        if (cached == null) {
+            final TypedArray a = context.obtainStyledAttributes(attrs, styleable, defStyleAttr, defStyleRes);
+            try {
+                cached = new CachedAttributes(context.getResources(), a, styleable.length);
+            } finally {
+                a.recycle();
+            }
+            entries.put(key, cached);
+        }
+        return cached;
+    }
+
+    /**
+     * Drops every cached entry. Configuration changes are picked up on their own, but a theme modified in
+     * place that views were already inflated with, for example with {@code Theme.applyStyle}, keeps its
+     * identity and configuration: call this after such a change.
+     */
+    static void clear() {
+        sCache.clear();
+    }
+
+    boolean hasValue(int index) {
+        return hasValue[index];
+    }
+
+    int getColor(int index, int defValue) {
+        return hasValue[index] && !isFloat[index] ? ints[index] : defValue;
+    }
+
+    int getInt(int index, int defValue) {
+        return hasValue[index] && !isFloat[index] ? ints[index] : defValue;
+    }
+
+    boolean getBoolean(int index, boolean defValue) {
+        return hasValue[index] && !isFloat[index] ? ints[index] != 0 : defValue;
+    }
+
+    float getFloat(int index, float defValue) {
+        if (!hasValue[index]) {
+            return defValue;
+        }
+        return isFloat[index] ? floats[index] : ints[index];
+    }
+
+    float getDimension(int index, float defValue) {
+        return hasValue[index] && isFloat[index] ? floats[index] : defValue;
+    }
+
+    Drawable getDrawable(int index) {
+        final Drawable.ConstantState state = drawables[index];
+        if (state != null) {
+            return state.newDrawable(resources);
+        }
+        return isColor[index] ? new ColorDrawable(ints[index]) : null;
+    }
+
+    /**
+     * The entries of one theme, in LRU order, valid for a single configuration.
+     */
+    private static final class ThemeEntries extends LinkedHashMap<Key, CachedAttributes> {
+        private static final long serialVersionUID = 1L;
+
+        private final Configuration configuration = new Configuration();
+        private boolean hasConfiguration;
+
+        ThemeEntries() {
+            super(16, 0.75f, true);
+        }
+
+        /**
+         * Drops the entries resolved for another configuration.
+         */
+        void follow(Configuration current) {
+            if (!hasConfiguration || !configuration.equals(current)) {
+                clear();
+                configuration.setTo(current);
+                hasConfiguration = true;
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CachedAttributes> eldest) {
+            return size() > MAX_ENTRIES_PER_THEME;
+        }
+    }
+
+    private static final class Key {
+        private final int[] styleable;
+        private final int defStyleAttr;
+        private final int defStyleRes;
+        private final int style;
+        private final int[] names;
+        private final String[] values;
+        private final int hash;
+
+        Key(AttributeSet attrs, int[] styleable, int defStyleAttr, int defStyleRes) {
+            this.styleable = styleable;
+            this.defStyleAttr = defStyleAttr;
+            this.defStyleRes = defStyleRes;
+            int count = 0;
+            int[] names = null;
+            String[] values = null;
+            if (attrs != null) {
+                final int attributeCount = attrs.getAttributeCount();
+                names = new int[attributeCount];
+                values = new String[attributeCount];
+                for (int i = 0; i < attributeCount; i++) {
+                    final int name = attrs.getAttributeNameResource(i);
+                    if (contains(styleable, name)) {
+                        names[count] = name;
+                        values[count] = attrs.getAttributeValue(i);
+                        count++;
+                    }
+                }
+            }
+            this.style = attrs != null ? attrs.getStyleAttribute() : 0;
+            this.names = names != null ? Arrays.copyOf(names, count) : new int[0];
+            this.values = values != null ? Arrays.copyOf(values, count) : new String[0];
+
+            int h = System.identityHashCode(styleable);
+            h = 31 * h + defStyleAttr;
+            h = 31 * h + defStyleRes;
+            h = 31 * h + style;
+            h = 31 * h + Arrays.hashCode(this.names);
+            h = 31 * h + Arrays.hashCode(this.values);
+            hash = h;
+        }
+
+        private static boolean contains(int[] styleable, int name) {
+            for (int attr : styleable) {
+                if (attr == name) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && styleable == other.styleable && defStyleAttr == other.defStyleAttr
+                    && defStyleRes == other.defStyleRes && style == other.style
+                    && Arrays.equals(names, other.names) && Arrays.equals(values, other.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.peirra.stacked;
+
+/**
+ * Placement and culling rules of {@link StackedLayout} in deck mode.
+ * <p>
+ * The children are the layers of the stack: the front child sits on the image bounds and every child
+ * behind it is moved one frame up and to the right, the same way the frames are. Whatever a child in front
+ * overlaps is hidden, so a child only has to draw the part left uncovered by the nearest opaque child in
+ * front of it.
+ */
+final class DeckGeometry {
+
+    /**
+     * Draw the child as it is, nothing in front of it covers it.
+     */
+    static final int DRAW = 0;
+    /**
+     * Skip the child, it is hidden behind the child in front.
+     */
+    static final int SKIP = 1;
+    /**
+     * Draw the child clipped to the area outside of the child in front.
+     */
+    static final int CLIP = 2;
+
+    private DeckGeometry() {
+    }
+
+    /**
+     * @param depth       position from the front, 0 for the front child
+     * @param frameCount  frames drawn, children deeper than the last frame stay on it
+     * @param frameOffset distance between two frames, see {@link FrameGeometry#frameOffset(float, int)}
+     * @return how far the child at {@code depth} moves right and up
+     */
+    static int offset(int depth, int frameCount, float frameOffset) {
+        final int maxDepth = Math.max(0, frameCount - 1);
+        return Math.round(Math.min(depth, maxDepth) * frameOffset);
+    }
+
+    /**
+     * Decides how to draw a child given the bounds of the nearest opaque child in front of it.
+     *
+     * @param differenceClip whether the canvas can clip to the area outside of a rectangle
+     * @return {@link #DRAW}, {@link #SKIP} or {@link #CLIP}
+     */
+    static int cull(int frontLeft, int frontTop, int frontRight, int frontBottom,
+                    int left, int top, int right, int bottom, boolean differenceClip) {
+        if (frontLeft <= left && frontTop <= top && frontRight >= right && frontBottom >= bottom) {
+            return SKIP;
+        }
+        if (frontLeft >= right || frontRight <= left || frontTop >= bottom || frontBottom <= top) {
+            // nothing in common, a clip would not save anything
+            return DRAW;
+        }
+        return differenceClip ? CLIP : DRAW;
+    }
+}
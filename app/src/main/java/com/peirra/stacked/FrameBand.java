@@ -0,0 +1,81 @@
+package com.peirra.stacked;
+
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Shader;
+
+/**
+ * Fills the band of a {@link FrameGeometry} built with {@link FrameGeometry#setBand}, standing in for all
+ * the layers that are less than a pixel apart with a single {@code drawPath} call.
+ * <p>
+ * The band is filled with the frame color, or with a gradient from the frame color next to the image to
+ * the styled end color at the back of the stack.
+ */
+final class FrameBand {
+
+    private final Path path = new Path();
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    // the gradient in use and what it was created for, shaders are immutable
+    private LinearGradient gradient;
+    private final float[] gradientEnds = new float[4];
+    private int gradientStartColor;
+    private int gradientEndColor;
+
+    FrameBand() {
+        paint.setStyle(Paint.Style.FILL);
+    }
+
+    /**
+     * Rebuilds the band, call whenever the frame geometry or colors change.
+     */
+    void set(FrameGeometry geometry, int startColor, int endColor) {
+        final float[] b = geometry.getBand();
+        buildPath(geometry, path);
+        if (startColor == endColor) {
+            paint.setColor(startColor);
+            paint.setShader(null);
+        } else {
+            //opaque so the paint alpha does not scale the gradient, which runs from the image to the back
+            paint.setColor(Color.BLACK);
+            paint.setShader(gradient(b[10], b[11], b[4], b[5], startColor, endColor));
+        }
+    }
+
+    /**
+     * Replaces the path with the outline of the band of the geometry.
+     */
+    static void buildPath(FrameGeometry geometry, Path path) {
+        final float[] b = geometry.getBand();
+        path.rewind();
+        path.moveTo(b[0], b[1]);
+        for (int i = 2; i < FrameGeometry.FLOATS_PER_BAND; i += 2) {
+            path.lineTo(b[i], b[i + 1]);
+        }
+        path.close();
+    }
+
+    /**
+     * @return the current gradient, only created again when its ends or colors changed
+     */
+    private LinearGradient gradient(float x0, float y0, float x1, float y1, int startColor, int endColor) {
+        final float[] e = gradientEnds;
+        if (gradient == null || e[0] != x0 || e[1] != y0 || e[2] != x1 || e[3] != y1
+                || gradientStartColor != startColor || gradientEndColor != endColor) {
+            gradient = new LinearGradient(x0, y0, x1, y1, startColor, endColor, Shader.TileMode.CLAMP);
+            e[0] = x0;
+            e[1] = y0;
+            e[2] = x1;
+            e[3] = y1;
+            gradientStartColor = startColor;
+            gradientEndColor = endColor;
+        }
+        return gradient;
+    }
+
+    void draw(Canvas canvas) {
+        canvas.drawPath(path, paint);
+    }
+}
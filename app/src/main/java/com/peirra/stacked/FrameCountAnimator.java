@@ -0,0 +1,96 @@
+package com.peirra.stacked;
+
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
+
+/**
+ * Animates the frame count of a stacked view, one step per vsync.
+ * <p>
+ * The animator reposts itself through {@link ViewCompat#postOnAnimation(View, Runnable)}, which is driven
+ * by the Choreographer, so running it allocates nothing per frame. The view is given a hardware layer for
+ * the duration of the animation and gets its previous layer type back afterwards.
+ */
+final class FrameCountAnimator implements Runnable {
+
+    interface Host {
+        /**
+         * Called on every animation frame with the interpolated count.
+         */
+        void onAnimatedFrameCount(int frameCount);
+
+        /**
+         * Called once the animation finished or was cancelled.
+         */
+        void onFrameCountAnimationEnd();
+    }
+
+    private final View view;
+    private final Host host;
+
+    private Interpolator interpolator;
+    private long startTime;
+    private long duration;
+    private int from;
+    private int to;
+    private boolean running;
+    private int previousLayerType;
+
+    FrameCountAnimator(View view, Host host) {
+        this.view = view;
+        this.host = host;
+    }
+
+    /**
+     * Starts animating from {@code from} to {@code to}, replacing any animation already running.
+     *
+     * @param interpolator null for linear
+     */
+    void start(int from, int to, long duration, Interpolator interpolator) {
+        this.from = from;
+        this.to = to;
+        this.duration = duration;
+        this.interpolator = interpolator;
+        startTime = AnimationUtils.currentAnimationTimeMillis();
+        if (!running) {
+            running = true;
+            previousLayerType = view.getLayerType();
+            view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+            ViewCompat.postOnAnimation(view, this);
+        }
+    }
+
+    void cancel() {
+        if (running) {
+            view.removeCallbacks(this);
+            finish();
+        }
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public void run() {
+        if (!running) {
+            return;
+        }
+        final long elapsed = AnimationUtils.currentAnimationTimeMillis() - startTime;
+        final float fraction = duration <= 0 ? 1f : Math.min(1f, elapsed / (float) duration);
+        final float value = interpolator != null ? interpolator.getInterpolation(fraction) : fraction;
+        host.onAnimatedFrameCount(Math.round(from + (to - from) * value));
+        if (fraction < 1f) {
+            ViewCompat.postOnAnimation(view, this);
+        } else {
+            finish();
+        }
+    }
+
+    private void finish() {
+        running = false;
+        view.setLayerType(previousLayerType, null);
+        host.onFrameCountAnimationEnd();
+    }
+}
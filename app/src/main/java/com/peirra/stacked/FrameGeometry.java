@@ -0,0 +1,275 @@
+package com.peirra.stacked;
+
+/**
+ * Pure-Java geometry for the stacked frame decoration.
+ * <p>
+ * Every layer of a stack is described by four line segments, packed back to back into a single
+ * {@code float[]} so the whole decoration can be drawn with one
+ * {@code Canvas.drawLines(lines, 0, getLineCount(), paint)} call. Layer 0 is the rectangle around the
+ * image, every following layer is offset by {@code frameDelta} up and to the right.
+ * <p>
+ * The buffer is only rebuilt when the caller asks for it (layout, frame count or padding changes), never
+ * while drawing.
+ * <p>
+ * Layers less than a pixel apart can be described at a lower level of detail with
+ * {@link #setBand(int, int, int, int, int, float)}: only the frame around the image and the outermost frame
+ * are kept as lines and everything in between becomes a single polygon, so the cost no longer depends on
+ * the frame count.
+ */
+public final class FrameGeometry {
+
+    /** Number of floats used by a single layer: four lines of two points each. */
+    public static final int FLOATS_PER_LAYER = 16;
+
+    /** Number of floats describing the band polygon: six points. */
+    public static final int FLOATS_PER_BAND = 12;
+
+    private float[] lines = new float[FLOATS_PER_LAYER];
+    private int lineCount;
+    private float left;
+    private float top;
+    private float right;
+    private float bottom;
+    private final float[] band = new float[FLOATS_PER_BAND];
+    private boolean hasBand;
+
+    /**
+     * Clears the buffer without releasing it.
+     */
+    public void reset() {
+        lineCount = 0;
+        left = top = right = bottom = 0;
+        hasBand = false;
+    }
+
+    /**
+     * Replaces the buffer contents with the frames of a single stack.
+     */
+    public void set(int left, int top, int right, int bottom, int frameCount, float frameDelta) {
+        reset();
+        add(left, top, right, bottom, frameCount, frameDelta);
+    }
+
+    /**
+     * Replaces the buffer contents with a copy of another geometry, without allocating once the buffer is
+     * large enough.
+     */
+    public void set(FrameGeometry source) {
+        ensureCapacity(source.lineCount);
+        System.arraycopy(source.lines, 0, lines, 0, source.lineCount);
+        lineCount = source.lineCount;
+        left = source.left;
+        top = source.top;
+        right = source.right;
+        bottom = source.bottom;
+        hasBand = source.hasBand;
+        System.arraycopy(source.band, 0, band, 0, FLOATS_PER_BAND);
+    }
+
+    /**
+     * Appends the frames of a stack whose front image occupies the given rectangle.
+     *
+     * @param frameCount number of layers including the one around the image, values below 1 draw the image
+     *                   rectangle only
+     * @param frameDelta offset between two consecutive layers
+     */
+    public void add(int left, int top, int right, int bottom, int frameCount, float frameDelta) {
+        final int layers = Math.max(1, frameCount);
+        ensureCapacity(lineCount + layers * FLOATS_PER_LAYER);
+        final float[] l = lines;
+        int n = lineCount;
+
+        //initial frame is around the image
+        n = putLine(l, n, left, top, right, top);
+        n = putLine(l, n, right, top, right, bottom);
+        n = putLine(l, n, right, bottom, left, bottom);
+        n = putLine(l, n, left, bottom, left, top);
+
+        for (int i = 1; i < layers; i++) {
+            n = putLayer(l, n, left, top, right, bottom, i * frameDelta, frameDelta);
+        }
+
+        updateExtent(left, top, right, bottom, (layers - 1) * frameDelta);
+        lineCount = n;
+    }
+
+    /**
+     * Replaces the buffer contents with the frames of a single stack spread over {@code framePadding}, as a
+     * {@link #setBand band} when the layers would be less than a pixel apart.
+     */
+    public void setStack(int left, int top, int right, int bottom, int frameCount, float framePadding) {
+        if (isSubPixel(framePadding, frameCount)) {
+            setBand(left, top, right, bottom, frameCount, frameOffset(framePadding, frameCount));
+        } else {
+            set(left, top, right, bottom, frameCount, frameOffset(framePadding, frameCount));
+        }
+    }
+
+    /**
+     * Replaces the buffer contents with a level of detail version of a single stack, meant for layers that
+     * are less than a pixel apart. The lines only hold the frame around the image and the outermost frame,
+     * the layers in between are covered by the polygon returned by {@link #getBand()}.
+     */
+    public void setBand(int left, int top, int right, int bottom, int frameCount, float frameDelta) {
+        reset();
+        final int layers = Math.max(1, frameCount);
+        ensureCapacity(2 * FLOATS_PER_LAYER);
+        final float[] l = lines;
+        int n = 0;
+        n = putLine(l, n, left, top, right, top);
+        n = putLine(l, n, right, top, right, bottom);
+        n = putLine(l, n, right, bottom, left, bottom);
+        n = putLine(l, n, left, bottom, left, top);
+        final float reach = (layers - 1) * frameDelta;
+        if (layers > 1) {
+            n = putLayer(l, n, left, top, right, bottom, reach, frameDelta);
+            //the staircase of short lines is approximated by the diagonals
+            final float[] b = band;
+            b[0] = left;
+            b[1] = top;
+            b[2] = left + reach;
+            b[3] = top - reach;
+            b[4] = right + reach;
+            b[5] = top - reach;
+            b[6] = right + reach;
+            b[7] = bottom - reach;
+            b[8] = right;
+            b[9] = bottom;
+            b[10] = right;
+            b[11] = top;
+            hasBand = true;
+        }
+        updateExtent(left, top, right, bottom, reach);
+        lineCount = n;
+    }
+
+    /**
+     * @return true if the buffer was built by {@link #setBand(int, int, int, int, int, float)} for more than
+     * one layer
+     */
+    public boolean hasBand() {
+        return hasBand;
+    }
+
+    /**
+     * @return the six corners of the L-shaped band covering the layers between the image and the outermost
+     * frame, as x, y pairs from the top left of the image clockwise, only valid if {@link #hasBand()}
+     */
+    public float[] getBand() {
+        return band;
+    }
+
+    private void updateExtent(int left, int top, int right, int bottom, float reach) {
+        if (lineCount == 0) {
+            this.left = left;
+            this.top = top - reach;
+            this.right = right + reach;
+            this.bottom = bottom;
+        } else {
+            this.left = Math.min(this.left, left);
+            this.top = Math.min(this.top, top - reach);
+            this.right = Math.max(this.right, right + reach);
+            this.bottom = Math.max(this.bottom, bottom);
+        }
+    }
+
+    /**
+     * @return the packed line buffer, only the first {@link #getLineCount()} floats are valid
+     */
+    public float[] getLines() {
+        return lines;
+    }
+
+    /**
+     * @return number of valid floats in {@link #getLines()}, as expected by {@code Canvas.drawLines}
+     */
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * @return left edge of the area covered by the frames, ignoring stroke width
+     */
+    public float getLeft() {
+        return left;
+    }
+
+    /**
+     * @return top edge of the outermost frame, ignoring stroke width
+     */
+    public float getTop() {
+        return top;
+    }
+
+    /**
+     * @return right edge of the outermost frame, ignoring stroke width
+     */
+    public float getRight() {
+        return right;
+    }
+
+    public float getBottom() {
+        return bottom;
+    }
+
+    /**
+     * Offset between two consecutive layers, as used by the stacked views.
+     */
+    public static int frameDelta(float framePadding, int frameCount) {
+        return (int) Math.floor(framePadding / (float) frameCount);
+    }
+
+    /**
+     * Exact offset between two consecutive layers, may be a fraction of a pixel.
+     */
+    public static float frameOffset(float framePadding, int frameCount) {
+        return framePadding / (float) Math.max(1, frameCount);
+    }
+
+    /**
+     * @return true if the layers are less than a pixel apart and are better drawn as a band, see
+     * {@link #setBand(int, int, int, int, int, float)}
+     */
+    public static boolean isSubPixel(float framePadding, int frameCount) {
+        return frameCount > 1 && frameOffset(framePadding, frameCount) < 1f;
+    }
+
+    /**
+     * Stroke width of the frame lines, as used by the stacked views.
+     */
+    public static int strokeWidth(float framePadding, int frameCount, int maxStrokeWidth) {
+        return Math.min(maxStrokeWidth, (int) Math.floor(framePadding / frameCount) / 2);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > lines.length) {
+            final float[] grown = new float[Math.max(capacity, lines.length * 2)];
+            System.arraycopy(lines, 0, grown, 0, lineCount);
+            lines = grown;
+        }
+    }
+
+    /**
+     * Puts the four lines of the layer {@code offset} up and to the right of the image.
+     */
+    private static int putLayer(float[] l, int n, int left, int top, int right, int bottom, float offset,
+                                float frameDelta) {
+        final float fl = left + offset;
+        final float ft = top - offset;
+        final float fr = right + offset;
+        final float fb = bottom - offset;
+        n = putLine(l, n, fr, ft, fr, fb);                      //vertical long
+        n = putLine(l, n, fl, ft, fl, ft + frameDelta);         //vertical short
+        n = putLine(l, n, fl, ft, fr, ft);                      //horizontal long
+        n = putLine(l, n, fr - frameDelta, fb, fr, fb);         //horizontal short
+        return n;
+    }
+
+    private static int putLine(float[] l, int n, float x0, float y0, float x1, float y1) {
+        l[n] = x0;
+        l[n + 1] = y0;
+        l[n + 2] = x1;
+        l[n + 3] = y1;
+        return n + 4;
+    }
+}
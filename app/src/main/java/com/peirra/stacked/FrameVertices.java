@@ -0,0 +1,196 @@
+package com.peirra.stacked;
+
+/**
+ * Pure-Java triangle mesh for styled frames.
+ * <p>
+ * Every line of a {@link FrameGeometry} becomes a quad of the stroke width, with square caps like the
+ * {@code Paint} the views use, and every vertex carries the color of its layer: a blend from the start color
+ * at the image to the end color at the back of the stack. The alpha channel follows its own curve so layers
+ * can fade out faster or slower than they change color. An optional shadow copy of the mesh is emitted
+ * first, offset down and to the right. The result is a single indexed buffer drawn with one
+ * {@code Canvas.drawVertices(TRIANGLES, ...)} call however many layers there are.
+ */
+public final class FrameVertices {
+
+    public static final int CURVE_LINEAR = 0;
+    public static final int CURVE_ACCELERATE = 1;
+    public static final int CURVE_DECELERATE = 2;
+
+    /** Vertices addressable by the short index buffer. */
+    static final int MAX_VERTICES = Short.MAX_VALUE;
+
+    private static final int VERTICES_PER_LINE = 4;
+    private static final int INDICES_PER_LINE = 6;
+
+    private int startColor;
+    private int endColor;
+    private int alphaCurve = CURVE_LINEAR;
+    private float shadowOffset;
+    private int shadowColor;
+
+    private float[] vertices = new float[0];
+    private int[] colors = new int[0];
+    private short[] indices = new short[0];
+    private int vertexCount;
+    private int indexCount;
+
+    /**
+     * @param startColor   color of the frame around the image
+     * @param endColor     color of the outermost frame
+     * @param alphaCurve   one of {@link #CURVE_LINEAR}, {@link #CURVE_ACCELERATE} or {@link #CURVE_DECELERATE}
+     * @param shadowOffset offset of the shadow, 0 for none
+     * @param shadowColor  color of the shadow under the frame around the image
+     */
+    public void setStyle(int startColor, int endColor, int alphaCurve, float shadowOffset, int shadowColor) {
+        this.startColor = startColor;
+        this.endColor = endColor;
+        this.alphaCurve = alphaCurve;
+        this.shadowOffset = shadowOffset;
+        this.shadowColor = shadowColor;
+    }
+
+    /**
+     * @return false if every layer would look the same as with a plain paint
+     */
+    public boolean isStyled() {
+        return startColor != endColor || (shadowOffset != 0 && (shadowColor >>> 24) != 0);
+    }
+
+    /**
+     * Builds the mesh for the lines of the geometry.
+     *
+     * @return false if the geometry has too many lines for a single buffer, the caller then has to draw the
+     * lines the plain way
+     */
+    public boolean set(FrameGeometry geometry, float strokeWidth) {
+        final int lines = geometry.getLineCount() / 4;
+        final boolean shadow = shadowOffset != 0 && (shadowColor >>> 24) != 0;
+        final int quads = shadow ? lines * 2 : lines;
+        if (quads * VERTICES_PER_LINE > MAX_VERTICES) {
+            vertexCount = indexCount = 0;
+            return false;
+        }
+        ensureCapacity(quads);
+        final int layers = lines / 4;
+        final float half = Math.max(1f, strokeWidth) / 2f;
+        final float[] l = geometry.getLines();
+        int quad = 0;
+        if (shadow) {
+            for (int i = 0; i < lines; i++) {
+                putQuad(quad++, l, i * 4, half, shadowOffset, shadowColor(layerColor(i / 4, layers)));
+            }
+        }
+        for (int i = 0; i < lines; i++) {
+            putQuad(quad++, l, i * 4, half, 0, layerColor(i / 4, layers));
+        }
+        vertexCount = quad * VERTICES_PER_LINE * 2;
+        indexCount = quad * INDICES_PER_LINE;
+        return true;
+    }
+
+    /**
+     * @return x, y pairs, only the first {@link #getVertexCount()} floats are valid
+     */
+    public float[] getVertices() {
+        return vertices;
+    }
+
+    /**
+     * @return number of valid floats in {@link #getVertices()}, as expected by {@code Canvas.drawVertices}
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * @return one color per vertex
+     */
+    public int[] getColors() {
+        return colors;
+    }
+
+    public short[] getIndices() {
+        return indices;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    /**
+     * @return color of a layer, 0 being the frame around the image
+     */
+    int layerColor(int layer, int layers) {
+        final float t = layers > 1 ? layer / (float) (layers - 1) : 0f;
+        final float alpha;
+        switch (alphaCurve) {
+            case CURVE_ACCELERATE:
+                alpha = t * t;
+                break;
+            case CURVE_DECELERATE:
+                alpha = 1 - (1 - t) * (1 - t);
+                break;
+            default:
+                alpha = t;
+                break;
+        }
+        return blend(startColor >>> 24, endColor >>> 24, alpha) << 24
+                | blend((startColor >> 16) & 0xff, (endColor >> 16) & 0xff, t) << 16
+                | blend((startColor >> 8) & 0xff, (endColor >> 8) & 0xff, t) << 8
+                | blend(startColor & 0xff, endColor & 0xff, t);
+    }
+
+    /**
+     * @return color of the shadow under a layer of the given color, faded with it
+     */
+    int shadowColor(int layerColor) {
+        final int alpha = (shadowColor >>> 24) * (layerColor >>> 24) / 255;
+        return (alpha << 24) | (shadowColor & 0xffffff);
+    }
+
+    private static int blend(int from, int to, float t) {
+        return Math.round(from + (to - from) * t);
+    }
+
+    private void putQuad(int quad, float[] lines, int line, float half, float offset, int color) {
+        final float x0 = lines[line] + offset;
+        final float y0 = lines[line + 1] + offset;
+        final float x1 = lines[line + 2] + offset;
+        final float y1 = lines[line + 3] + offset;
+        final float length = (float) Math.hypot(x1 - x0, y1 - y0);
+        //unit direction scaled to half the stroke, zero length lines still get a square cap
+        final float dx = length > 0 ? (x1 - x0) / length * half : half;
+        final float dy = length > 0 ? (y1 - y0) / length * half : 0;
+
+        final float[] v = vertices;
+        int n = quad * VERTICES_PER_LINE * 2;
+        v[n++] = x0 - dx - dy;
+        v[n++] = y0 - dy + dx;
+        v[n++] = x0 - dx + dy;
+        v[n++] = y0 - dy - dx;
+        v[n++] = x1 + dx + dy;
+        v[n++] = y1 + dy - dx;
+        v[n++] = x1 + dx - dy;
+        v[n] = y1 + dy + dx;
+
+        final int first = quad * VERTICES_PER_LINE;
+        for (int i = 0; i < VERTICES_PER_LINE; i++) {
+            colors[first + i] = color;
+        }
+        int k = quad * INDICES_PER_LINE;
+        indices[k++] = (short) first;
+        indices[k++] = (short) (first + 1);
+        indices[k++] = (short) (first + 2);
+        indices[k++] = (short) first;
+        indices[k++] = (short) (first + 2);
+        indices[k] = (short) (first + 3);
+    }
+
+    private void ensureCapacity(int quads) {
+        if (colors.length < quads * VERTICES_PER_LINE) {
+            vertices = new float[quads * VERTICES_PER_LINE * 2];
+            colors = new int[quads * VERTICES_PER_LINE];
+            indices = new short[quads * INDICES_PER_LINE];
+        }
+    }
+}
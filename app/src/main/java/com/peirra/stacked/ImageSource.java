@@ -0,0 +1,220 @@
+package com.peirra.stacked;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Where {@link StackedImageLoader} reads an encoded image from.
+ * <p>
+ * Sources are opened on a background thread, possibly more than once per load (bounds first, pixels
+ * second), so one-shot streams are buffered the first time they are read.
+ */
+public abstract class ImageSource {
+
+    /**
+     * @return a stable key used by the memory cache, or null if the source cannot be cached. May stat a file
+     * or hash the content, only called on the loader thread.
+     */
+    public abstract String getKey();
+
+    /**
+     * @return the {@link #getKey() key} if it is known without any I/O or hashing, null otherwise. Called on
+     * the main thread for the synchronous cache lookup, sources without a key yet are looked up on the
+     * loader thread instead.
+     */
+    public String peekKey() {
+        return getKey();
+    }
+
+    public abstract InputStream open(Context context) throws IOException;
+
+    /**
+     * @return true if the {@link #getKey() key} identifies the same image across process restarts, so the
+     * thumbnail may be kept in the persistent store. Only files and uris are, other sources stay in memory.
+     */
+    public boolean isPersistable() {
+        return false;
+    }
+
+    /**
+     * The modification time of the file keys the cached image. It is read once, on the loader thread, the
+     * first time the source is loaded: a file changed later needs a new source.
+     */
+    public static ImageSource fromFile(File file) {
+        return new FileSource(file);
+    }
+
+    public static ImageSource fromUri(Uri uri) {
+        return new UriSource(uri);
+    }
+
+    /**
+     * The content is hashed on the loader thread to key the cached image.
+     */
+    public static ImageSource fromBytes(byte[] bytes) {
+        return new BytesSource(bytes, null);
+    }
+
+    /**
+     * @param key identifies the content, the same key must always come with the same bytes
+     */
+    public static ImageSource fromBytes(byte[] bytes, String key) {
+        return new BytesSource(bytes, "bytes:key:" + key);
+    }
+
+    /**
+     * The stream is consumed on the loader thread and closed once read.
+     */
+    public static ImageSource fromStream(InputStream stream) {
+        return new StreamSource(stream);
+    }
+
+    private static String digest(byte[] bytes) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final byte[] hash = digest.digest(bytes);
+        final char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[2 * i] = Character.forDigit((hash[i] >> 4) & 0xf, 16);
+            hex[2 * i + 1] = Character.forDigit(hash[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+
+    private static final class FileSource extends ImageSource {
+        private final File file;
+        private volatile String key;
+
+        FileSource(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public String getKey() {
+            if (key == null) {
+                key = "file:" + file.getAbsolutePath() + ":" + file.lastModified();
+            }
+            return key;
+        }
+
+        @Override
+        public String peekKey() {
+            return key;
+        }
+
+        @Override
+        public boolean isPersistable() {
+            return true;
+        }
+
+        @Override
+        public InputStream open(Context context) throws IOException {
+            return new FileInputStream(file);
+        }
+    }
+
+    private static final class UriSource extends ImageSource {
+        private final Uri uri;
+
+        UriSource(Uri uri) {
+            this.uri = uri;
+        }
+
+        @Override
+        public String getKey() {
+            return uri.toString();
+        }
+
+        @Override
+        public boolean isPersistable() {
+            return true;
+        }
+
+        @Override
+        public InputStream open(Context context) throws IOException {
+            final InputStream in = context.getContentResolver().openInputStream(uri);
+            if (in == null) {
+                throw new IOException("Unable to open " + uri);
+            }
+            return in;
+        }
+    }
+
+    private static final class BytesSource extends ImageSource {
+        private final byte[] bytes;
+        private volatile String key;
+
+        BytesSource(byte[] bytes, String key) {
+            this.bytes = bytes;
+            this.key = key;
+        }
+
+        /**
+         * Keyed on the content unless the caller named it, so equal arrays share cache entries and a reused
+         * array never hits a stale one. The digest is computed once per source.
+         */
+        @Override
+        public String getKey() {
+            if (key == null) {
+                key = "bytes:" + digest(bytes) + ":" + bytes.length;
+            }
+            return key;
+        }
+
+        @Override
+        public String peekKey() {
+            return key;
+        }
+
+        @Override
+        public InputStream open(Context context) {
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+
+    private static final class StreamSource extends ImageSource {
+        private InputStream stream;
+        private byte[] bytes;
+
+        StreamSource(InputStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public String getKey() {
+            return null;
+        }
+
+        @Override
+        public synchronized InputStream open(Context context) throws IOException {
+            if (bytes == null) {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final byte[] buffer = new byte[16 * 1024];
+                try {
+                    int read;
+                    while ((read = stream.read(buffer)) != -1) {
+                        out.write(buffer, 0, read);
+                    }
+                } finally {
+                    stream.close();
+                    stream = null;
+                }
+                bytes = out.toByteArray();
+            }
+            return new ByteArrayInputStream(bytes);
+        }
+    }
+}
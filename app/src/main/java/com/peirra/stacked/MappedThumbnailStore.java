@@ -0,0 +1,221 @@
+package com.peirra.stacked;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistent store of pre-scaled thumbnail pixels, backed by a memory-mapped segment file.
+ * <p>
+ * Pixels are stored raw (4 bytes per pixel, in the byte order {@code Bitmap.copyPixelsToBuffer} produces)
+ * so a hit is handed out as a read-only slice of the mapping and copied straight into a bitmap without
+ * decoding. Entries are appended to the segment, a compact index file records where each one lives.
+ * When the segment is full it is cleared and refilled, which keeps writes sequential.
+ * <p>
+ * This class has no Android dependencies. It is safe to use from several threads.
+ */
+public final class MappedThumbnailStore implements Closeable {
+
+    public static final int BYTES_PER_PIXEL = 4;
+
+    static final String SEGMENT_FILE = "thumbnails.seg";
+    static final String INDEX_FILE = "thumbnails.idx";
+
+    private static final int INDEX_MAGIC = 0x53544b49; // "STKI"
+    private static final int INDEX_VERSION = 1;
+    private static final int INDEX_HEADER_SIZE = 12;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * A stored thumbnail. {@link #pixels} is a read-only view of the mapped segment, valid until the store
+     * is cleared or closed.
+     */
+    public static final class Entry {
+        public final int width;
+        public final int height;
+        public final ByteBuffer pixels;
+
+        Entry(int width, int height, ByteBuffer pixels) {
+            this.width = width;
+            this.height = height;
+            this.pixels = pixels;
+        }
+    }
+
+    private static final class Location {
+        final int offset;
+        final int width;
+        final int height;
+        final int length;
+
+        Location(int offset, int width, int height, int length) {
+            this.offset = offset;
+            this.width = width;
+            this.height = height;
+            this.length = length;
+        }
+    }
+
+    private final int capacity;
+    private final RandomAccessFile segmentFile;
+    private final RandomAccessFile indexFile;
+    private final MappedByteBuffer segment;
+    private final Map<String, Location> locations = new HashMap<String, Location>();
+    private int writePosition;
+
+    /**
+     * Opens or creates the store in the given directory.
+     *
+     * @param capacity size of the segment file in bytes, an existing store with a different capacity is
+     *                 discarded
+     */
+    public MappedThumbnailStore(File directory, int capacity) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        this.capacity = capacity;
+        segmentFile = new RandomAccessFile(new File(directory, SEGMENT_FILE), "rw");
+        indexFile = new RandomAccessFile(new File(directory, INDEX_FILE), "rw");
+        segmentFile.setLength(capacity);
+        segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        if (!readIndex()) {
+            resetIndex();
+        }
+    }
+
+    /**
+     * @return the stored thumbnail or null if there is none
+     */
+    public synchronized Entry get(String key) {
+        final Location location = locations.get(key);
+        if (location == null) {
+            return null;
+        }
+        final ByteBuffer pixels = segment.duplicate();
+        pixels.position(location.offset);
+        pixels.limit(location.offset + location.length);
+        return new Entry(location.width, location.height, pixels.slice().asReadOnlyBuffer());
+    }
+
+    /**
+     * Stores the remaining bytes of {@code pixels} under the key, replacing any previous entry.
+     *
+     * @return false if the thumbnail is larger than the whole segment
+     */
+    public synchronized boolean put(String key, int width, int height, ByteBuffer pixels) throws IOException {
+        final int length = pixels.remaining();
+        if (length != width * height * BYTES_PER_PIXEL) {
+            throw new IllegalArgumentException("Expected " + width * height * BYTES_PER_PIXEL + " bytes, got " + length);
+        }
+        if (length > capacity) {
+            return false;
+        }
+        if (writePosition + length > capacity) {
+            clear();
+        }
+        final ByteBuffer target = segment.duplicate();
+        target.position(writePosition);
+        target.put(pixels.duplicate());
+
+        // the data is in place before the index points at it
+        final byte[] keyBytes = key.getBytes(UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(4 + keyBytes.length + 16);
+        record.putInt(keyBytes.length).put(keyBytes)
+                .putInt(writePosition).putInt(width).putInt(height).putInt(length);
+        indexFile.seek(indexFile.length());
+        indexFile.write(record.array());
+
+        locations.put(key, new Location(writePosition, width, height, length));
+        writePosition += length;
+        return true;
+    }
+
+    public synchronized boolean contains(String key) {
+        return locations.containsKey(key);
+    }
+
+    /**
+     * @return number of stored thumbnails
+     */
+    public synchronized int size() {
+        return locations.size();
+    }
+
+    /**
+     * Drops every entry. Buffers returned by {@link #get(String)} must no longer be used.
+     */
+    public synchronized void clear() throws IOException {
+        resetIndex();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        segment.force();
+        indexFile.close();
+        segmentFile.close();
+    }
+
+    private boolean readIndex() throws IOException {
+        if (indexFile.length() < INDEX_HEADER_SIZE) {
+            return false;
+        }
+        indexFile.seek(0);
+        if (indexFile.readInt() != INDEX_MAGIC || indexFile.readInt() != INDEX_VERSION
+                || indexFile.readInt() != capacity) {
+            return false;
+        }
+        long validLength = INDEX_HEADER_SIZE;
+        try {
+            while (indexFile.getFilePointer() < indexFile.length()) {
+                final int keyLength = indexFile.readInt();
+                if (keyLength < 0 || keyLength > indexFile.length()) {
+                    break;
+                }
+                final byte[] keyBytes = new byte[keyLength];
+                indexFile.readFully(keyBytes);
+                final int offset = indexFile.readInt();
+                final int width = indexFile.readInt();
+                final int height = indexFile.readInt();
+                final int length = indexFile.readInt();
+                if (!isValidRecord(offset, width, height, length)) {
+                    // torn or stale, nothing after it can be trusted either
+                    break;
+                }
+                locations.put(new String(keyBytes, UTF_8), new Location(offset, width, height, length));
+                writePosition = Math.max(writePosition, offset + length);
+                validLength = indexFile.getFilePointer();
+            }
+        } catch (EOFException e) {
+            // a record was cut short by a crash, everything before it is still good
+        }
+        indexFile.setLength(validLength);
+        return true;
+    }
+
+    /**
+     * @return true if the record describes whole pixels that lie inside the segment
+     */
+    private boolean isValidRecord(int offset, int width, int height, int length) {
+        return offset >= 0 && width > 0 && height > 0
+                && (long) width * height * BYTES_PER_PIXEL == length
+                && (long) offset + length <= capacity;
+    }
+
+        private void resetIndex() throws IOException {
+        locations.clear();
+        writePosition = 0;
+        indexFile.setLength(0);
+        indexFile.seek(0);
+        indexFile.writeInt(INDEX_MAGIC);
+        indexFile.writeInt(INDEX_VERSION);
+        indexFile.writeInt(capacity);
+    }
+}
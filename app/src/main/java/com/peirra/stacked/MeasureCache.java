@@ -0,0 +1,108 @@
+package com.peirra.stacked;
+
+/**
+ * Remembers the inputs and result of the last measure pass of a view so an identical pass can be skipped.
+ * <p>
+ * Inputs are fed one by one between {@link #begin()} and {@link #isHit()}, which keeps the check free of
+ * allocations:
+ * <pre>
+ * cache.begin();
+ * cache.key(widthMeasureSpec);
+ * cache.key(heightMeasureSpec);
+ * for (int i = 0; i &lt; getChildCount(); i++) {
+ *     cache.child(getChildAt(i), getChildAt(i).getVisibility());
+ * }
+ * if (cache.isHit()) {
+ *     setMeasuredDimension(cache.getWidthAndState(), cache.getHeightAndState());
+ *     return;
+ * }
+ * </pre>
+ */
+final class MeasureCache {
+
+    private final int[] keys;
+    private int index;
+    // children of the last pass, held until the next one
+    private Object[] children = new Object[0];
+    private int[] visibilities = new int[0];
+    private int childCount;
+    private int childIndex;
+    private boolean valid;
+    private boolean mismatch;
+    private int widthAndState;
+    private int heightAndState;
+
+    MeasureCache(int keyCount) {
+        keys = new int[keyCount];
+    }
+
+    void begin() {
+        index = 0;
+        childIndex = 0;
+        mismatch = !valid;
+    }
+
+    void key(int value) {
+        if (keys[index] != value) {
+            keys[index] = value;
+            mismatch = true;
+        }
+        index++;
+    }
+
+    void key(float value) {
+        key(Float.floatToIntBits(value));
+    }
+
+    /**
+     * Keys a child by identity and visibility, so replacing a child with another one or hiding it is a miss
+     * even when the child count stays the same. Only allocates when the number of children grows.
+     */
+    void child(Object child, int visibility) {
+        if (childIndex == children.length) {
+            final int capacity = Math.max(4, 2 * children.length);
+            final Object[] grownChildren = new Object[capacity];
+            final int[] grownVisibilities = new int[capacity];
+            System.arraycopy(children, 0, grownChildren, 0, childIndex);
+            System.arraycopy(visibilities, 0, grownVisibilities, 0, childIndex);
+            children = grownChildren;
+            visibilities = grownVisibilities;
+        }
+        if (children[childIndex] != child || visibilities[childIndex] != visibility) {
+            children[childIndex] = child;
+            visibilities[childIndex] = visibility;
+            mismatch = true;
+        }
+        childIndex++;
+    }
+
+    boolean isHit() {
+        if (childIndex != childCount) {
+            // children were removed, let go of them
+            for (int i = childIndex; i < childCount; i++) {
+                children[i] = null;
+            }
+            childCount = childIndex;
+            mismatch = true;
+        }
+        return !mismatch;
+    }
+
+    void store(int widthAndState, int heightAndState) {
+        this.widthAndState = widthAndState;
+        this.heightAndState = heightAndState;
+        valid = true;
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    int getWidthAndState() {
+        return widthAndState;
+    }
+
+    int getHeightAndState() {
+        return heightAndState;
+    }
+}
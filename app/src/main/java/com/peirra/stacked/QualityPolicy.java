@@ -0,0 +1,126 @@
+package com.peirra.stacked;
+
+/**
+ * Pure-Java decisions of the {@link StackedQualityGovernor}, fed with vsync timestamps.
+ * <p>
+ * The frame budget is the shortest interval seen since the last {@link #reset()}, which is the display
+ * refresh period once a couple of frames went by on time. A frame counts as janky when it took more than
+ * one and a half budgets. Every {@link #JANK_THRESHOLD} janky frames within the last {@link #WINDOW}
+ * frames lower the quality one level, {@link #RECOVERY_FRAMES} frames in a row on time restore full
+ * quality. {@link #IDLE_FRAMES} frames in a row without a stacked view drawn mean nothing is left to watch.
+ */
+final class QualityPolicy {
+
+    static final int WINDOW = 32;
+    static final int JANK_THRESHOLD = 4;
+    static final int RECOVERY_FRAMES = 90;
+    static final int IDLE_FRAMES = 3;
+
+    private static final long MIN_BUDGET_NANOS = 4000000L;
+
+    private final int maxLevel;
+    private final boolean[] janky = new boolean[WINDOW];
+    private int windowIndex;
+    private int jankCount;
+    private int calmFrames;
+    private int idleFrames;
+    private long lastFrameTime;
+    private long budget = Long.MAX_VALUE;
+    private int level;
+
+    /**
+     * @param maxLevel lowest quality, levels go from 0 for full quality up to this value
+     */
+    QualityPolicy(int maxLevel) {
+        this.maxLevel = maxLevel;
+    }
+
+    /**
+     * Forgets the frame timing, call before feeding frames again after a pause. The level is kept.
+     */
+    void reset() {
+        lastFrameTime = 0;
+        budget = Long.MAX_VALUE;
+        clearWindow();
+        calmFrames = 0;
+        idleFrames = 0;
+    }
+
+    /**
+     * Counts a frame callback.
+     *
+     * @param drawn whether a stacked view drew since the previous callback
+     * @return true once {@link #IDLE_FRAMES} callbacks in a row came without a draw
+     */
+    boolean isIdle(boolean drawn) {
+        idleFrames = drawn ? 0 : idleFrames + 1;
+        return idleFrames >= IDLE_FRAMES;
+    }
+
+    /**
+     * Goes back to full quality and forgets the frame timing.
+     */
+    void restore() {
+        level = 0;
+        reset();
+    }
+
+    /**
+     * @param frameTimeNanos vsync time of the frame, as handed to {@code Choreographer.FrameCallback}
+     * @return the quality level to draw with
+     */
+    int onFrame(long frameTimeNanos) {
+        final long last = lastFrameTime;
+        lastFrameTime = frameTimeNanos;
+        if (last == 0) {
+            return level;
+        }
+        final long interval = frameTimeNanos - last;
+        if (interval <= 0) {
+            return level;
+        }
+        budget = Math.min(budget, Math.max(MIN_BUDGET_NANOS, interval));
+        final boolean jank = interval * 2 > budget * 3;
+
+        if (janky[windowIndex]) {
+            jankCount--;
+        }
+        janky[windowIndex] = jank;
+        windowIndex = (windowIndex + 1) % WINDOW;
+        if (jank) {
+            jankCount++;
+            calmFrames = 0;
+        } else {
+            calmFrames++;
+        }
+
+        if (jankCount >= JANK_THRESHOLD && level < maxLevel) {
+            level++;
+            // the next step needs jank at the new level
+            clearWindow();
+        } else if (level > 0 && calmFrames >= RECOVERY_FRAMES) {
+            level = 0;
+            clearWindow();
+        }
+        return level;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Frame count drawn at the reduced count level: half the layers, keeping at least two so the image
+     * still looks stacked.
+     */
+    static int reducedFrameCount(int frameCount) {
+        return Math.min(frameCount, Math.max(2, frameCount / 2));
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < WINDOW; i++) {
+            janky[i] = false;
+        }
+        jankCount = 0;
+    }
+}
@@ -0,0 +1,160 @@
+package com.peirra.stacked;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Read-only view of a sprite atlas of pre-rendered stacked thumbnails, as written by {@link StackAtlasWriter}.
+ * <p>
+ * An atlas is a single file holding fixed size pages of raw pixels (4 bytes per pixel, premultiplied, in the
+ * byte order {@code Bitmap.copyPixelsFromBuffer} expects) and an index of the rectangle every id occupies:
+ * <pre>
+ * header   magic "STKA", version, pageWidth, pageHeight, pageCount, entryCount, indexOffset (long)
+ * pages    pageCount * pageWidth * pageHeight * 4 bytes, starting at {@link #PAGE_ALIGNMENT}
+ * index    entryCount * (keyLength, key UTF-8, page, left, top, width, height)
+ * </pre>
+ * Every page is memory-mapped when the atlas is opened, pixels are only paged in when they are read.
+ * <p>
+ * This class has no Android dependencies. It is safe to use from several threads.
+ */
+public final class StackAtlas implements Closeable {
+
+    public static final int BYTES_PER_PIXEL = 4;
+
+    static final int MAGIC = 0x53544b41; // "STKA"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int PAGE_ALIGNMENT = 4096;
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Location of one thumbnail inside the atlas.
+     */
+    public static final class Region {
+        public final int page;
+        public final int left;
+        public final int top;
+        public final int width;
+        public final int height;
+
+        Region(int page, int left, int top, int width, int height) {
+            this.page = page;
+            this.left = left;
+            this.top = top;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final RandomAccessFile file;
+    private final int pageWidth;
+    private final int pageHeight;
+    private final MappedByteBuffer[] pages;
+    private final Map<String, Region> regions;
+
+    public StackAtlas(File atlas) throws IOException {
+        file = new RandomAccessFile(atlas, "r");
+        try {
+            if (file.length() < HEADER_SIZE || file.readInt() != MAGIC) {
+                throw new IOException("Not a stack atlas: " + atlas);
+            }
+            final int version = file.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported atlas version " + version);
+            }
+            pageWidth = file.readInt();
+            pageHeight = file.readInt();
+            final int pageCount = file.readInt();
+            final int entryCount = file.readInt();
+            final long indexOffset = file.readLong();
+            final long pageSize = pageSize(pageWidth, pageHeight);
+            if (pageWidth <= 0 || pageHeight <= 0 || pageCount < 0 || entryCount < 0
+                    || pageSize > Integer.MAX_VALUE
+                    || indexOffset < PAGE_ALIGNMENT + pageCount * pageSize || indexOffset > file.length()) {
+                throw new IOException("Corrupt atlas header: " + atlas);
+            }
+
+            final FileChannel channel = file.getChannel();
+            pages = new MappedByteBuffer[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                pages[i] = channel.map(FileChannel.MapMode.READ_ONLY, PAGE_ALIGNMENT + i * pageSize, pageSize);
+            }
+
+            regions = new HashMap<String, Region>(entryCount * 2);
+            file.seek(indexOffset);
+            for (int i = 0; i < entryCount; i++) {
+                final int keyLength = file.readInt();
+                if (keyLength < 0 || keyLength > file.length() - file.getFilePointer()) {
+                    throw new IOException("Corrupt atlas index: " + atlas);
+                }
+                final byte[] key = new byte[keyLength];
+                file.readFully(key);
+                final Region region = new Region(file.readInt(), file.readInt(), file.readInt(),
+                        file.readInt(), file.readInt());
+                if (region.page < 0 || region.page >= pageCount || region.left < 0 || region.top < 0
+                        || region.width < 0 || region.height < 0
+                        || region.left + region.width > pageWidth || region.top + region.height > pageHeight) {
+                    throw new IOException("Corrupt atlas index: " + atlas);
+                }
+                regions.put(new String(key, UTF_8), region);
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the region of the thumbnail or null if the atlas doesn't contain it
+     */
+    public Region getRegion(String id) {
+        return regions.get(id);
+    }
+
+    /**
+     * @return read-only view of a whole page, rows of {@link #getPageWidth()} pixels
+     */
+    public ByteBuffer getPage(int page) {
+        return pages[page].asReadOnlyBuffer();
+    }
+
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    public int getPageWidth() {
+        return pageWidth;
+    }
+
+    public int getPageHeight() {
+        return pageHeight;
+    }
+
+    /**
+     * @return number of thumbnails in the atlas
+     */
+    public int size() {
+        return regions.size();
+    }
+
+    /**
+     * Closes the file. The mappings stay valid until they are garbage collected.
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    static long pageSize(int pageWidth, int pageHeight) {
+        return (long) pageWidth * pageHeight * BYTES_PER_PIXEL;
+    }
+}
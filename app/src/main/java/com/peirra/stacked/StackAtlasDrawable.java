@@ -0,0 +1,64 @@
+package com.peirra.stacked;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Draws a rectangle of a shared atlas page bitmap, see {@link StackAtlasPages}. Draws nothing until the
+ * page is loaded.
+ */
+public final class StackAtlasDrawable extends Drawable {
+
+    private Bitmap page;
+    private final Rect region;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    StackAtlasDrawable(Bitmap page, int left, int top, int width, int height) {
+        this.page = page;
+        this.region = new Rect(left, top, left + width, top + height);
+    }
+
+    void setPage(Bitmap page) {
+        this.page = page;
+        invalidateSelf();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (page != null) {
+            canvas.drawBitmap(page, region, getBounds(), paint);
+        }
+    }
+
+    @Override
+    public int getIntrinsicWidth() {
+        return region.width();
+    }
+
+    @Override
+    public int getIntrinsicHeight() {
+        return region.height();
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
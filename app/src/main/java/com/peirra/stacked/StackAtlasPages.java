@@ -0,0 +1,136 @@
+package com.peirra.stacked;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Bitmaps of the pages of a {@link StackAtlas}.
+ * <p>
+ * A bitmap cannot wrap the mapped atlas, so every page is copied once into a bitmap of its own, on a
+ * background thread the first time one of its thumbnails is asked for. Drawables of a page that is still
+ * loading draw nothing and are redrawn once it arrives. After that every thumbnail on the page is drawn
+ * from the shared bitmap through a {@link StackAtlasDrawable}, nothing is decoded or copied per
+ * thumbnail.
+ * <p>
+ * Must only be used from the main thread.
+ */
+public final class StackAtlasPages {
+
+    private static ExecutorService sExecutor;
+
+    private final StackAtlas atlas;
+    private final Bitmap[] pages;
+    private final ArrayList<ArrayList<StackAtlasDrawable>> waiting;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean recycled;
+
+    public StackAtlasPages(StackAtlas atlas) {
+        this.atlas = atlas;
+        this.pages = new Bitmap[atlas.getPageCount()];
+        this.waiting = new ArrayList<ArrayList<StackAtlasDrawable>>(pages.length);
+        for (int i = 0; i < pages.length; i++) {
+            waiting.add(null);
+        }
+    }
+
+    /**
+     * @return a drawable showing the thumbnail, or null if the atlas doesn't contain it. The drawable is
+     * empty until its page is loaded.
+     */
+    public Drawable getDrawable(String id) {
+        final StackAtlas.Region region = atlas.getRegion(id);
+        if (region == null) {
+            return null;
+        }
+        final StackAtlasDrawable drawable = new StackAtlasDrawable(pages[region.page],
+                region.left, region.top, region.width, region.height);
+        if (pages[region.page] == null && !recycled) {
+            ArrayList<StackAtlasDrawable> drawables = waiting.get(region.page);
+            if (drawables == null) {
+                drawables = new ArrayList<StackAtlasDrawable>();
+                waiting.set(region.page, drawables);
+                loadPage(region.page);
+            }
+            drawables.add(drawable);
+        }
+        return drawable;
+    }
+
+    /**
+     * @return the bitmap of the page, null until it is loaded
+     */
+    public Bitmap getPage(int page) {
+        return pages[page];
+    }
+
+    private void loadPage(final int page) {
+        executor().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap bitmap = Bitmap.createBitmap(atlas.getPageWidth(), atlas.getPageHeight(), Bitmap.Config.ARGB_8888);
+                bitmap.copyPixelsFromBuffer(atlas.getPage(page));
+                mainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageLoaded(page, bitmap);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageLoaded(int page, Bitmap bitmap) {
+        final ArrayList<StackAtlasDrawable> drawables = waiting.set(page, null);
+        if (recycled) {
+            bitmap.recycle();
+            return;
+        }
+        pages[page] = bitmap;
+        if (drawables != null) {
+            for (int i = 0; i < drawables.size(); i++) {
+                drawables.get(i).setPage(bitmap);
+            }
+        }
+    }
+
+    /**
+     * Releases the page bitmaps, pages still loading are dropped. Drawables handed out before must no
+     * longer be drawn.
+     */
+    public void recycle() {
+        recycled = true;
+        for (int i = 0; i < pages.length; i++) {
+            waiting.set(i, null);
+            if (pages[i] != null) {
+                pages[i].recycle();
+                pages[i] = null;
+            }
+        }
+    }
+
+    private static synchronized ExecutorService executor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    return new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "StackAtlasPages");
+                }
+            });
+        }
+        return sExecutor;
+    }
+}
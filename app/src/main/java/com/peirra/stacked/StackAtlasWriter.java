@@ -0,0 +1,148 @@
+package com.peirra.stacked;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes a {@link StackAtlas}.
+ * <p>
+ * Thumbnails are packed in the order they are added onto shelves: left to right until the row is full,
+ * then on a new row below the tallest thumbnail of the previous one, then on a new page. Thumbnails of
+ * equal size, which is what the batch renderer produces, leave no gaps. Only the page being filled is
+ * kept in memory, complete pages are written out right away.
+ * <p>
+ * This class has no Android dependencies and is not thread-safe.
+ */
+public final class StackAtlasWriter implements Closeable {
+
+    private final RandomAccessFile file;
+    private final int pageWidth;
+    private final int pageHeight;
+    private final byte[] page;
+    private final List<String> ids = new ArrayList<String>();
+    private final List<StackAtlas.Region> regions = new ArrayList<StackAtlas.Region>();
+    private final Set<String> written = new HashSet<String>();
+
+    private int pageCount;
+    private boolean pageDirty;
+    private int shelfX;
+    private int shelfY;
+    private int shelfHeight;
+
+    public StackAtlasWriter(File atlas, int pageWidth, int pageHeight) throws IOException {
+        if (pageWidth <= 0 || pageHeight <= 0 || StackAtlas.pageSize(pageWidth, pageHeight) > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid page size " + pageWidth + "x" + pageHeight);
+        }
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+        this.page = new byte[(int) StackAtlas.pageSize(pageWidth, pageHeight)];
+        file = new RandomAccessFile(atlas, "rw");
+        file.setLength(0);
+    }
+
+    /**
+     * Packs a thumbnail.
+     *
+     * @param argb non-premultiplied colors, row by row, as returned by {@code Bitmap.getPixels} or
+     *             {@code BufferedImage.getRGB}
+     */
+    public void add(String id, int width, int height, int[] argb) throws IOException {
+        if (width > pageWidth || height > pageHeight) {
+            throw new IllegalArgumentException(width + "x" + height + " doesn't fit a " + pageWidth + "x" + pageHeight + " page");
+        }
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Expected " + width * height + " pixels, got " + argb.length);
+        }
+        if (!written.add(id)) {
+            throw new IllegalArgumentException("Duplicate id " + id);
+        }
+
+        if (shelfX + width > pageWidth) {
+            shelfX = 0;
+            shelfY += shelfHeight;
+            shelfHeight = 0;
+        }
+        if (shelfY + height > pageHeight) {
+            flushPage();
+            shelfX = 0;
+            shelfY = 0;
+            shelfHeight = 0;
+        }
+
+        for (int y = 0; y < height; y++) {
+            int out = ((shelfY + y) * pageWidth + shelfX) * StackAtlas.BYTES_PER_PIXEL;
+            for (int x = 0, in = y * width; x < width; x++, in++) {
+                final int color = argb[in];
+                final int a = color >>> 24;
+                page[out++] = (byte) premultiply((color >> 16) & 0xff, a);
+                page[out++] = (byte) premultiply((color >> 8) & 0xff, a);
+                page[out++] = (byte) premultiply(color & 0xff, a);
+                page[out++] = (byte) a;
+            }
+        }
+        ids.add(id);
+        regions.add(new StackAtlas.Region(pageCount, shelfX, shelfY, width, height));
+        pageDirty = true;
+        shelfX += width;
+        shelfHeight = Math.max(shelfHeight, height);
+    }
+
+    /**
+     * Writes the last page and the index.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (pageDirty) {
+                flushPage();
+            }
+            final long indexOffset = pageOffset(pageCount);
+            file.setLength(indexOffset);
+            file.seek(indexOffset);
+            for (int i = 0; i < ids.size(); i++) {
+                final byte[] key = ids.get(i).getBytes(StackAtlas.UTF_8);
+                final StackAtlas.Region region = regions.get(i);
+                final ByteBuffer record = ByteBuffer.allocate(4 + key.length + 20);
+                record.putInt(key.length).put(key).putInt(region.page)
+                        .putInt(region.left).putInt(region.top).putInt(region.width).putInt(region.height);
+                file.write(record.array());
+            }
+
+            // the header goes last so a writer that died halfway leaves an unreadable file
+            file.seek(0);
+            file.writeInt(StackAtlas.MAGIC);
+            file.writeInt(StackAtlas.VERSION);
+            file.writeInt(pageWidth);
+            file.writeInt(pageHeight);
+            file.writeInt(pageCount);
+            file.writeInt(ids.size());
+            file.writeLong(indexOffset);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void flushPage() throws IOException {
+        file.seek(pageOffset(pageCount));
+        file.write(page);
+        Arrays.fill(page, (byte) 0);
+        pageCount++;
+        pageDirty = false;
+    }
+
+    private long pageOffset(int index) {
+        return StackAtlas.PAGE_ALIGNMENT + index * StackAtlas.pageSize(pageWidth, pageHeight);
+    }
+
+    private static int premultiply(int channel, int alpha) {
+        return (channel * alpha + 127) / 255;
+    }
+}
@@ -0,0 +1,70 @@
+package com.peirra.stacked;
+
+/**
+ * Pure-Java measure and layout math shared by {@link StackedLayout}, {@link StackedImageView} and
+ * {@link StackSpec}.
+ * <p>
+ * The frame padding is taken off every side of the content, the content is then centered in what is left,
+ * as {@code Gravity.CENTER} places it. Instances are reused across layout passes so placing a child does
+ * not allocate, they are not thread safe.
+ */
+public final class StackMeasure {
+
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    /**
+     * @param contentSize      largest measured child size along one axis, margins included
+     * @param suggestedMinimum minimum size of the view along the same axis
+     * @return the size the view asks for along that axis, before resolving it against its measure spec
+     */
+    public static int measuredSize(int contentSize, int suggestedMinimum, float framePadding) {
+        return (int) (Math.max(contentSize, suggestedMinimum) - (2 * framePadding));
+    }
+
+    /**
+     * Places a child of the given measured size within the layout area of its parent. The result is read
+     * with {@link #getLeft()}, {@link #getTop()}, {@link #getRight()} and {@link #getBottom()}.
+     *
+     * @param parentLeft   left edge of the parent content, padding included
+     * @param parentTop    top edge of the parent content, padding included
+     * @param parentRight  right edge of the parent content, padding included
+     * @param parentBottom bottom edge of the parent content, padding included
+     */
+    public void layoutChild(int parentLeft, int parentTop, int parentRight, int parentBottom,
+                            int leftMargin, int topMargin, int rightMargin, int bottomMargin,
+                            int measuredWidth, int measuredHeight, float framePadding) {
+        final int width = (int) (measuredWidth - (2 * framePadding));
+        final int height = (int) (measuredHeight - (2 * framePadding));
+
+        // the frame in which the child is placed
+        final int frameLeft = (int) (parentLeft + leftMargin + framePadding);
+        final int frameRight = (int) (parentRight - rightMargin - framePadding);
+        final int frameTop = (int) (parentTop + topMargin + framePadding);
+        final int frameBottom = (int) (parentBottom - bottomMargin - framePadding);
+
+        //Gravity.CENTER
+        left = frameLeft + (frameRight - frameLeft - width) / 2;
+        top = frameTop + (frameBottom - frameTop - height) / 2;
+        right = left + width;
+        bottom = top + height;
+    }
+
+    public int getLeft() {
+        return left;
+    }
+
+    public int getTop() {
+        return top;
+    }
+
+    public int getRight() {
+        return right;
+    }
+
+    public int getBottom() {
+        return bottom;
+    }
+}
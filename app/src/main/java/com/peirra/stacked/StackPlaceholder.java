@@ -0,0 +1,198 @@
+package com.peirra.stacked;
+
+/**
+ * Pure-Java codec for the tiny placeholders {@code StackedImageView} shows while the real image loads.
+ * <p>
+ * A placeholder is the lowest frequencies of a cosine transform of the image in linear light, a few dozen
+ * bytes that can travel with the rest of the item data:
+ * <pre>
+ *   byte 0      (componentsX - 1) &lt;&lt; 4 | (componentsY - 1)
+ *   bytes 1-3   average color, sRGB
+ *   byte 4      scale of the remaining components
+ *   bytes 5-    one signed byte per channel for every other component, row by row
+ * </pre>
+ * Four by three components take 38 bytes. Decoding goes into a reusable {@link #SIZE} x {@link #SIZE}
+ * buffer that is meant to be scaled up with bitmap filtering, which provides the blur. A decoder keeps all
+ * its buffers between calls and never allocates once constructed, it is not thread safe.
+ */
+public final class StackPlaceholder {
+
+    /** Width and height of the decoded pixels. */
+    public static final int SIZE = 16;
+
+    /** Maximum number of components in either direction. */
+    public static final int MAX_COMPONENTS = 8;
+
+    private static final int HEADER_SIZE = 5;
+    private static final int LINEAR_STEPS = 4096;
+
+    private static final float[] SRGB_TO_LINEAR = new float[256];
+    private static final byte[] LINEAR_TO_SRGB = new byte[LINEAR_STEPS];
+    // cos(PI * c * (i + 0.5) / SIZE) for every component c and pixel i
+    private static final float[] COSINES = new float[MAX_COMPONENTS * SIZE];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            final double v = i / 255.0;
+            SRGB_TO_LINEAR[i] = (float) (v <= 0.04045 ? v / 12.92 : Math.pow((v + 0.055) / 1.055, 2.4));
+        }
+        for (int i = 0; i < LINEAR_STEPS; i++) {
+            final double v = i / (double) (LINEAR_STEPS - 1);
+            final double s = v <= 0.0031308 ? v * 12.92 : 1.055 * Math.pow(v, 1 / 2.4) - 0.055;
+            LINEAR_TO_SRGB[i] = (byte) Math.round(s * 255);
+        }
+        for (int c = 0; c < MAX_COMPONENTS; c++) {
+            for (int i = 0; i < SIZE; i++) {
+                COSINES[c * SIZE + i] = (float) Math.cos(Math.PI * c * (i + 0.5) / SIZE);
+            }
+        }
+    }
+
+    private final int[] pixels = new int[SIZE * SIZE];
+    private final float[] coefficients = new float[MAX_COMPONENTS * MAX_COMPONENTS * 3];
+    private final float[] row = new float[MAX_COMPONENTS * 3];
+
+    /**
+     * @return number of bytes of a placeholder with the given number of components
+     */
+    public static int length(int componentsX, int componentsY) {
+        return HEADER_SIZE + 3 * (componentsX * componentsY - 1);
+    }
+
+    /**
+     * Encodes an image, typically ahead of time on the server or while the full image is decoded.
+     *
+     * @param argb        pixels row by row, alpha is ignored
+     * @param componentsX horizontal components between 1 and {@link #MAX_COMPONENTS}
+     * @param componentsY vertical components between 1 and {@link #MAX_COMPONENTS}
+     */
+    public static byte[] encode(int[] argb, int width, int height, int componentsX, int componentsY) {
+        if (componentsX < 1 || componentsX > MAX_COMPONENTS || componentsY < 1 || componentsY > MAX_COMPONENTS) {
+            throw new IllegalArgumentException("components must be between 1 and " + MAX_COMPONENTS);
+        }
+        if (width <= 0 || height <= 0 || argb.length < width * height) {
+            throw new IllegalArgumentException("invalid image size " + width + "x" + height);
+        }
+        final int count = componentsX * componentsY;
+        final float[] c = new float[count * 3];
+        final float[] cosX = new float[componentsX * width];
+        final float[] cosY = new float[componentsY * height];
+        for (int i = 0; i < componentsX; i++) {
+            for (int x = 0; x < width; x++) {
+                cosX[i * width + x] = (float) Math.cos(Math.PI * i * (x + 0.5) / width);
+            }
+        }
+        for (int j = 0; j < componentsY; j++) {
+            for (int y = 0; y < height; y++) {
+                cosY[j * height + y] = (float) Math.cos(Math.PI * j * (y + 0.5) / height);
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                final int p = argb[y * width + x];
+                final float r = SRGB_TO_LINEAR[(p >> 16) & 0xff];
+                final float g = SRGB_TO_LINEAR[(p >> 8) & 0xff];
+                final float b = SRGB_TO_LINEAR[p & 0xff];
+                for (int j = 0; j < componentsY; j++) {
+                    final float cy = cosY[j * height + y];
+                    for (int i = 0; i < componentsX; i++) {
+                        final float basis = cy * cosX[i * width + x];
+                        final int k = 3 * (j * componentsX + i);
+                        c[k] += r * basis;
+                        c[k + 1] += g * basis;
+                        c[k + 2] += b * basis;
+                    }
+                }
+            }
+        }
+        float maxAc = 0;
+        for (int j = 0; j < componentsY; j++) {
+            for (int i = 0; i < componentsX; i++) {
+                final float norm = (i == 0 ? 1 : 2) * (j == 0 ? 1 : 2) / (float) (width * height);
+                final int k = 3 * (j * componentsX + i);
+                for (int ch = 0; ch < 3; ch++) {
+                    c[k + ch] *= norm;
+                    if (k > 0) {
+                        maxAc = Math.max(maxAc, Math.abs(c[k + ch]));
+                    }
+                }
+            }
+        }
+
+        final byte[] data = new byte[length(componentsX, componentsY)];
+        data[0] = (byte) ((componentsX - 1) << 4 | (componentsY - 1));
+        data[1] = toSrgb(c[0]);
+        data[2] = toSrgb(c[1]);
+        data[3] = toSrgb(c[2]);
+        final int quantizedMax = Math.max(0, Math.min(255, (int) Math.ceil(maxAc * 256) - 1));
+        data[4] = (byte) quantizedMax;
+        final float scale = 127 / ((quantizedMax + 1) / 256f);
+        for (int k = 3; k < c.length; k++) {
+            data[HEADER_SIZE + k - 3] = (byte) Math.max(-127, Math.min(127, Math.round(c[k] * scale)));
+        }
+        return data;
+    }
+
+    /**
+     * Decodes a placeholder into the reusable pixel buffer.
+     *
+     * @return {@link #SIZE} x {@link #SIZE} opaque ARGB pixels row by row, overwritten by the next call
+     * @throws IllegalArgumentException if the data is not a placeholder
+     */
+    public int[] decode(byte[] data) {
+        if (data == null || data.length < HEADER_SIZE) {
+            throw new IllegalArgumentException("placeholder too short");
+        }
+        final int componentsX = ((data[0] >> 4) & 0x0f) + 1;
+        final int componentsY = (data[0] & 0x0f) + 1;
+        if (componentsX > MAX_COMPONENTS || componentsY > MAX_COMPONENTS
+                || data.length != length(componentsX, componentsY)) {
+            throw new IllegalArgumentException("invalid placeholder header");
+        }
+        final float[] c = coefficients;
+        c[0] = SRGB_TO_LINEAR[data[1] & 0xff];
+        c[1] = SRGB_TO_LINEAR[data[2] & 0xff];
+        c[2] = SRGB_TO_LINEAR[data[3] & 0xff];
+        final float scale = ((data[4] & 0xff) + 1) / 256f / 127f;
+        final int count = 3 * componentsX * componentsY;
+        for (int k = 3; k < count; k++) {
+            c[k] = data[HEADER_SIZE + k - 3] * scale;
+        }
+
+        final float[] r = row;
+        final int[] out = pixels;
+        for (int y = 0; y < SIZE; y++) {
+            // fold the vertical components first so every pixel only sums componentsX terms
+            for (int i = 0; i < componentsX; i++) {
+                float sr = 0, sg = 0, sb = 0;
+                for (int j = 0; j < componentsY; j++) {
+                    final float cy = COSINES[j * SIZE + y];
+                    final int k = 3 * (j * componentsX + i);
+                    sr += c[k] * cy;
+                    sg += c[k + 1] * cy;
+                    sb += c[k + 2] * cy;
+                }
+                r[3 * i] = sr;
+                r[3 * i + 1] = sg;
+                r[3 * i + 2] = sb;
+            }
+            for (int x = 0; x < SIZE; x++) {
+                float pr = 0, pg = 0, pb = 0;
+                for (int i = 0; i < componentsX; i++) {
+                    final float cx = COSINES[i * SIZE + x];
+                    pr += r[3 * i] * cx;
+                    pg += r[3 * i + 1] * cx;
+                    pb += r[3 * i + 2] * cx;
+                }
+                out[y * SIZE + x] = 0xff000000 | (toSrgb(pr) & 0xff) << 16 | (toSrgb(pg) & 0xff) << 8
+                        | (toSrgb(pb) & 0xff);
+            }
+        }
+        return out;
+    }
+
+    private static byte toSrgb(float linear) {
+        final int i = (int) (linear * (LINEAR_STEPS - 1) + 0.5f);
+        return LINEAR_TO_SRGB[i < 0 ? 0 : i >= LINEAR_STEPS ? LINEAR_STEPS - 1 : i];
+    }
+}
@@ -0,0 +1,198 @@
+package com.peirra.stacked;
+
+import android.graphics.Color;
+import android.graphics.Rect;
+import android.widget.ImageView.ScaleType;
+
+/**
+ * Immutable configuration of a {@link StackedImageView}, applied in one go with
+ * {@link StackedImageView#bind(StackSpec)}.
+ * <p>
+ * A spec can be built and {@link #precompute(int, int, int, int, int, int) precomputed} for the cell size on
+ * any thread, for example while the adapter prefetches, so binding it only copies the finished frame
+ * geometry into the view. Specs never change once built and are safe to share between threads and views.
+ */
+public final class StackSpec {
+
+    private static final int MAX_STROKE_WIDTH = 2;
+
+    private final int frameCount;
+    private final int frameMaxCount;
+    private final float framePadding;
+    private final int frameColor;
+    private final ScaleType scaleType;
+    private final int strokeWidth;
+    private final float frameOffset;
+
+    // only set on precomputed specs, never modified afterwards
+    private final boolean precomputed;
+    private final int width;
+    private final int height;
+    private final int paddingLeft;
+    private final int paddingTop;
+    private final int paddingRight;
+    private final int paddingBottom;
+    private final Rect imageBounds;
+    private final FrameGeometry geometry;
+
+    private StackSpec(Builder builder) {
+        frameMaxCount = builder.frameMaxCount;
+        frameCount = Math.min(builder.frameCount, builder.frameMaxCount);
+        framePadding = builder.framePadding;
+        frameColor = builder.frameColor;
+        scaleType = builder.scaleType;
+        strokeWidth = FrameGeometry.strokeWidth(framePadding, frameCount, MAX_STROKE_WIDTH);
+        frameOffset = FrameGeometry.frameOffset(framePadding, frameCount);
+        precomputed = false;
+        width = height = paddingLeft = paddingTop = paddingRight = paddingBottom = 0;
+        imageBounds = null;
+        geometry = null;
+    }
+
+    private StackSpec(StackSpec spec, int width, int height, int paddingLeft, int paddingTop, int paddingRight,
+                      int paddingBottom) {
+        frameCount = spec.frameCount;
+        frameMaxCount = spec.frameMaxCount;
+        framePadding = spec.framePadding;
+        frameColor = spec.frameColor;
+        scaleType = spec.scaleType;
+        strokeWidth = spec.strokeWidth;
+        frameOffset = spec.frameOffset;
+        precomputed = true;
+        this.width = width;
+        this.height = height;
+        this.paddingLeft = paddingLeft;
+        this.paddingTop = paddingTop;
+        this.paddingRight = paddingRight;
+        this.paddingBottom = paddingBottom;
+
+        // same math as StackedImageView#onLayout for a view measured with exact specs
+        final StackMeasure measure = new StackMeasure();
+        measure.layoutChild(paddingLeft, paddingTop, width - paddingRight, height - paddingBottom, 0, 0, 0, 0,
+                width - paddingLeft - paddingRight, height - paddingTop - paddingBottom, framePadding);
+        imageBounds = new Rect(measure.getLeft(), measure.getTop(), measure.getRight(), measure.getBottom());
+        geometry = new FrameGeometry();
+        geometry.setStack(imageBounds.left, imageBounds.top, imageBounds.right, imageBounds.bottom, frameCount, framePadding);
+    }
+
+    /**
+     * Returns a copy of this spec with the image bounds and frame lines computed for a view of the given
+     * size. Can be called from any thread. The image is assumed to fill the content box, as it does in a
+     * view measured with exact specs; {@link StackedImageView#bind(StackSpec)} only uses the geometry when
+     * it does.
+     */
+    public StackSpec precompute(int width, int height, int paddingLeft, int paddingTop, int paddingRight,
+                                int paddingBottom) {
+        if (isPrecomputedFor(width, height, paddingLeft, paddingTop, paddingRight, paddingBottom)) {
+            return this;
+        }
+        return new StackSpec(this, width, height, paddingLeft, paddingTop, paddingRight, paddingBottom);
+    }
+
+    /**
+     * @return true if the geometry of this spec can be used as is for a view of the given size
+     */
+    public boolean isPrecomputedFor(int width, int height, int paddingLeft, int paddingTop, int paddingRight,
+                                    int paddingBottom) {
+        return precomputed && this.width == width && this.height == height
+                && this.paddingLeft == paddingLeft && this.paddingTop == paddingTop
+                && this.paddingRight == paddingRight && this.paddingBottom == paddingBottom;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public int getFrameMaxCount() {
+        return frameMaxCount;
+    }
+
+    public float getFramePadding() {
+        return framePadding;
+    }
+
+    public int getFrameColor() {
+        return frameColor;
+    }
+
+    public ScaleType getScaleType() {
+        return scaleType;
+    }
+
+    public int getStrokeWidth() {
+        return strokeWidth;
+    }
+
+    /**
+     * @return the exact offset between two layers, may be a fraction of a pixel
+     */
+    public float getFrameOffset() {
+        return frameOffset;
+    }
+
+    /**
+     * @return the precomputed image bounds, must not be modified, null unless precomputed
+     */
+    Rect getImageBounds() {
+        return imageBounds;
+    }
+
+    /**
+     * @return the precomputed frame lines, must not be modified, null unless precomputed
+     */
+    FrameGeometry getGeometry() {
+        return geometry;
+    }
+
+    public Builder buildUpon() {
+        return new Builder()
+                .setFrameMaxCount(frameMaxCount)
+                .setFrameCount(frameCount)
+                .setFramePadding(framePadding)
+                .setFrameColor(frameColor)
+                .setScaleType(scaleType);
+    }
+
+    public static final class Builder {
+        private int frameCount = 10;
+        private int frameMaxCount = 10;
+        private float framePadding = 0;
+        private int frameColor = Color.RED;
+        private ScaleType scaleType = ScaleType.FIT_XY;
+
+        public Builder setFrameCount(int frameCount) {
+            this.frameCount = frameCount;
+            return this;
+        }
+
+        public Builder setFrameMaxCount(int frameMaxCount) {
+            this.frameMaxCount = frameMaxCount;
+            return this;
+        }
+
+        public Builder setFramePadding(float framePadding) {
+            this.framePadding = framePadding;
+            return this;
+        }
+
+        public Builder setFrameColor(int frameColor) {
+            this.frameColor = frameColor;
+            return this;
+        }
+
+        public Builder setScaleType(ScaleType scaleType) {
+            if (scaleType == null) {
+                throw new NullPointerException("scaleType");
+            }
+            this.scaleType = scaleType;
+            return this;
+        }
+
+        public StackSpec build() {
+            if (frameCount < 1 || frameMaxCount < 1) {
+                throw new IllegalArgumentException("frame counts must be at least 1");
+            }
+            return new StackSpec(this);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.peirra.stacked;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.util.LruCache;
+
+/**
+ * Opt-in cache of rasterized frame decorations shared between stacked views.
+ * <p>
+ * The complete frame set, the frame around the image and every layer behind it, is rendered once into an
+ * alpha-only bitmap and drawn with a single {@code drawBitmap} call, tinted with the frame color. That
+ * replaces the one packed {@code drawLines} call with one blit whose cost no longer grows with the frame
+ * count, at the price of a byte per pixel of the image and its layers. The bitmap is relative to the image,
+ * so views with the same image size and frame configuration share it wherever the image sits. Entries are
+ * evicted in LRU order once the byte budget is exceeded.
+ */
+public final class StackedFrameCache {
+
+    private static final int DEFAULT_MAX_BYTES = 1024 * 1024;
+
+    private static StackedFrameCache sDefault;
+
+    private final LruCache<Key, Frames> frames;
+
+    public StackedFrameCache(int maxBytes) {
+        frames = new LruCache<Key, Frames>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Frames value) {
+                return value.byteCount;
+            }
+        };
+    }
+
+    /**
+     * @return a process wide cache with a 1MB budget
+     */
+    public static synchronized StackedFrameCache getDefault() {
+        if (sDefault == null) {
+            sDefault = new StackedFrameCache(DEFAULT_MAX_BYTES);
+        }
+        return sDefault;
+    }
+
+    /**
+     * Returns the rasterized frames for the given configuration, rendering them on a miss.
+     *
+     * @param geometry frames of a single stack around {@code imageBounds}, as built by
+     *                 {@link FrameGeometry#set(int, int, int, int, int, float)}
+     * @return the cached frames, or null when there is nothing behind the image or they would not fit the
+     * budget
+     */
+    public Frames obtain(Rect imageBounds, int frameCount, float frameOffset, FrameGeometry geometry, Paint paint) {
+        if (frameCount <= 1 || imageBounds.isEmpty() || geometry.hasBand()) {
+            return null;
+        }
+        final Key key = new Key(imageBounds.width(), imageBounds.height(), frameCount, frameOffset,
+                paint.getStrokeWidth(), paint.isAntiAlias());
+        Frames cached = frames.get(key);
+        if (cached == null) {
+            if (key.byteCount() > frames.maxSize()) {
+                return null;
+            }
+            cached = new Frames(key, imageBounds, geometry, paint);
+            frames.put(key, cached);
+        }
+        return cached;
+    }
+
+    public int hitCount() {
+        return frames.hitCount();
+    }
+
+    public int missCount() {
+        return frames.missCount();
+    }
+
+    public int evictionCount() {
+        return frames.evictionCount();
+    }
+
+    /**
+     * @return bytes currently held by the cache
+     */
+    public int size() {
+        return frames.size();
+    }
+
+    public int maxSize() {
+        return frames.maxSize();
+    }
+
+    public void evictAll() {
+        frames.evictAll();
+    }
+
+    /**
+     * The frames of one image size, drawn with a single bitmap blit.
+     */
+    public static final class Frames {
+        private final Bitmap bitmap;
+        private final int left;
+        private final int top;
+        private final int byteCount;
+
+        Frames(Key key, Rect imageBounds, FrameGeometry geometry, Paint paint) {
+            final int pad = key.pad();
+            left = -pad;
+            top = -key.reach() - pad;
+            bitmap = Bitmap.createBitmap(key.width(), key.height(), Bitmap.Config.ALPHA_8);
+            byteCount = key.byteCount();
+
+            // opaque coverage only, the frame color is applied when the bitmap is drawn
+            final Paint coverage = new Paint(paint);
+            coverage.setColor(Color.BLACK);
+            final Canvas canvas = new Canvas(bitmap);
+            canvas.translate(-imageBounds.left - left, -imageBounds.top - top);
+            canvas.drawLines(geometry.getLines(), 0, geometry.getLineCount(), coverage);
+        }
+
+        /**
+         * Draws the cached frames, tinted with the color of {@code paint}.
+         *
+         * @return number of draw calls, always 1
+         */
+        public int draw(Canvas canvas, Rect imageBounds, Paint paint) {
+            canvas.drawBitmap(bitmap, imageBounds.left + left, imageBounds.top + top, paint);
+            return 1;
+        }
+    }
+
+    static final class Key {
+        private final int imageWidth;
+        private final int imageHeight;
+        private final int frameCount;
+        private final float frameOffset;
+        private final float stroke;
+        private final boolean antiAlias;
+
+        Key(int imageWidth, int imageHeight, int frameCount, float frameOffset, float stroke, boolean antiAlias) {
+            this.imageWidth = imageWidth;
+            this.imageHeight = imageHeight;
+            this.frameCount = frameCount;
+            this.frameOffset = frameOffset;
+            this.stroke = stroke;
+            this.antiAlias = antiAlias;
+        }
+
+        /**
+         * @return how far the layers reach beyond the image, rounded up to whole pixels
+         */
+        int reach() {
+            return (int) Math.ceil((frameCount - 1) * frameOffset);
+        }
+
+        /**
+         * @return room for half a stroke and anti-aliasing around the layers
+         */
+        int pad() {
+            return (int) Math.ceil(stroke / 2) + 1;
+        }
+
+        /**
+         * @return width of the bitmap, the image and the layers to its right plus the padding
+         */
+        int width() {
+            return imageWidth + reach() + 2 * pad();
+        }
+
+        /**
+         * @return height of the bitmap, the image and the layers above it plus the padding
+         */
+        int height() {
+            return imageHeight + reach() + 2 * pad();
+        }
+
+        /**
+         * @return pixel bytes of the bitmap, one byte per pixel
+         */
+        int byteCount() {
+            return width() * height();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return imageWidth == k.imageWidth && imageHeight == k.imageHeight && frameCount == k.frameCount
+                    && Float.compare(frameOffset, k.frameOffset) == 0 && Float.compare(stroke, k.stroke) == 0
+                    && antiAlias == k.antiAlias;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = imageWidth;
+            result = 31 * result + imageHeight;
+            result = 31 * result + frameCount;
+            result = 31 * result + Float.floatToIntBits(frameOffset);
+            result = 31 * result + Float.floatToIntBits(stroke);
+            result = 31 * result + (antiAlias ? 1 : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.peirra.stacked;
+
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The stacked frame decoration as a plain {@link Drawable}, usable as the background or foreground of any
+ * view without wrapping it in a {@link StackedLayout}.
+ * <p>
+ * The frames are drawn around the bounds inset by {@code framePadding}, which is also reported as the
+ * drawable padding, so a view using it as background keeps its content inside the front frame.
+ * <p>
+ * Drawables obtained with {@link #obtain(int, float, int)} for the same configuration share one
+ * {@link ConstantState}: one paint and one cache of frame lines per size, so an instance only costs a
+ * couple of fields. Frames closer than a pixel are drawn as a band, the same as in the stacked views. As with every shared drawable state, {@link #setAlpha(int)} and
+ * {@link #setColorFilter(ColorFilter)} affect all instances unless {@link #mutate()} is called first.
+ */
+public class StackedFrameDrawable extends Drawable {
+
+    private static final int MAX_STROKE_WIDTH = 2;
+    private static final int MAX_SHARED_STATES = 16;
+
+    private static final Map<StateKey, FrameState> sStates = new LinkedHashMap<StateKey, FrameState>(MAX_SHARED_STATES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<StateKey, FrameState> eldest) {
+            return size() > MAX_SHARED_STATES;
+        }
+    };
+
+    private FrameState state;
+    private boolean mutated;
+
+    /**
+     * Creates a drawable with a state of its own, see {@link #obtain(int, float, int)} to share it.
+     */
+    public StackedFrameDrawable(int frameColor, float framePadding, int frameCount) {
+        this(new FrameState(frameColor, framePadding, frameCount));
+    }
+
+    private StackedFrameDrawable(FrameState state) {
+        this.state = state;
+    }
+
+    /**
+     * @return a drawable sharing its state with every other drawable obtained for the same configuration
+     */
+    public static StackedFrameDrawable obtain(int frameColor, float framePadding, int frameCount) {
+        final StateKey key = new StateKey(frameColor, framePadding, frameCount);
+        FrameState state;
+        synchronized (sStates) {
+            state = sStates.get(key);
+            if (state == null) {
+                state = new FrameState(frameColor, framePadding, frameCount);
+                sStates.put(key, state);
+            }
+        }
+        return new StackedFrameDrawable(state);
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        final Rect bounds = getBounds();
+        final Frames frames = state.getFrames(bounds.width(), bounds.height());
+        if (frames == null) {
+            return;
+        }
+        final FrameGeometry geometry = frames.geometry;
+        final int saveCount = canvas.save();
+        canvas.translate(bounds.left, bounds.top);
+        if (frames.band != null) {
+            canvas.drawPath(frames.band, state.bandPaint);
+        }
+        canvas.drawLines(geometry.getLines(), 0, geometry.getLineCount(), state.paint);
+        canvas.restoreToCount(saveCount);
+    }
+
+    @Override
+    public boolean getPadding(Rect padding) {
+        final int inset = (int) state.framePadding;
+        padding.set(inset, inset, inset, inset);
+        return inset != 0;
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        if (state.paint.getAlpha() != alpha) {
+            state.paint.setAlpha(alpha);
+            state.bandPaint.setAlpha(alpha);
+            invalidateSelf();
+        }
+    }
+
+    @Override
+    public int getAlpha() {
+        return state.paint.getAlpha();
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        state.paint.setColorFilter(colorFilter);
+        state.bandPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+
+    @Override
+    public int getChangingConfigurations() {
+        return super.getChangingConfigurations() | state.changingConfigurations;
+    }
+
+    @Override
+    public ConstantState getConstantState() {
+        state.changingConfigurations = getChangingConfigurations();
+        return state;
+    }
+
+    @Override
+    public Drawable mutate() {
+        if (!mutated && super.mutate() == this) {
+            state = new FrameState(state);
+            mutated = true;
+        }
+        return this;
+    }
+
+    public int getFrameColor() {
+        return state.frameColor;
+    }
+
+    public float getFramePadding() {
+        return state.framePadding;
+    }
+
+    public int getFrameCount() {
+        return state.frameCount;
+    }
+
+    /**
+     * The frames of one drawable size, relative to the drawable bounds.
+     */
+    private static final class Frames {
+        final FrameGeometry geometry = new FrameGeometry();
+        Path band; // fills the layers closer than a pixel, null if they are drawn as lines
+    }
+
+    static final class FrameState extends ConstantState {
+        private static final int MAX_CACHED_SIZES = 8;
+
+        final int frameColor;
+        final float framePadding;
+        final int frameCount;
+        final Paint paint = new Paint();
+        final Paint bandPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        int changingConfigurations;
+
+        // frames per drawable size, replaced in turn once full; only touched on the main thread
+        private final int[] cachedWidths = new int[MAX_CACHED_SIZES];
+        private final int[] cachedHeights = new int[MAX_CACHED_SIZES];
+        private final Frames[] cachedFrames = new Frames[MAX_CACHED_SIZES];
+        private int cachedCount;
+        private int nextSlot;
+        private int lastSlot = -1;
+
+        FrameState(int frameColor, float framePadding, int frameCount) {
+            this.frameColor = frameColor;
+            this.framePadding = framePadding;
+            this.frameCount = frameCount;
+            paint.setAntiAlias(true);
+            paint.setColor(frameColor);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(FrameGeometry.strokeWidth(framePadding, frameCount, MAX_STROKE_WIDTH));
+            paint.setStrokeCap(Paint.Cap.SQUARE);
+            bandPaint.setColor(frameColor);
+            bandPaint.setStyle(Paint.Style.FILL);
+        }
+
+        FrameState(FrameState source) {
+            this(source.frameColor, source.framePadding, source.frameCount);
+            paint.set(source.paint);
+            bandPaint.set(source.bandPaint);
+            changingConfigurations = source.changingConfigurations;
+        }
+
+        /**
+         * @return the frames for a drawable of the given size, built like the stacked views build theirs,
+         * null if it is too small to show any
+         */
+        Frames getFrames(int width, int height) {
+            final int inset = (int) framePadding;
+            if (width <= 2 * inset || height <= 2 * inset) {
+                return null;
+            }
+            if (lastSlot >= 0 && cachedWidths[lastSlot] == width && cachedHeights[lastSlot] == height) {
+                return cachedFrames[lastSlot];
+            }
+            for (int i = 0; i < cachedCount; i++) {
+                if (cachedWidths[i] == width && cachedHeights[i] == height) {
+                    lastSlot = i;
+                    return cachedFrames[i];
+                }
+            }
+            final int slot = nextSlot;
+            nextSlot = (nextSlot + 1) % MAX_CACHED_SIZES;
+            cachedCount = Math.max(cachedCount, slot + 1);
+            Frames frames = cachedFrames[slot];
+            if (frames == null) {
+                frames = new Frames();
+                cachedFrames[slot] = frames;
+            }
+            frames.geometry.setStack(inset, inset, width - inset, height - inset, frameCount, framePadding);
+            if (frames.geometry.hasBand()) {
+                if (frames.band == null) {
+                    frames.band = new Path();
+                }
+                FrameBand.buildPath(frames.geometry, frames.band);
+            } else {
+                frames.band = null;
+            }
+            cachedWidths[slot] = width;
+            cachedHeights[slot] = height;
+            lastSlot = slot;
+            return frames;
+        }
+
+        @Override
+        public Drawable newDrawable() {
+            return new StackedFrameDrawable(this);
+        }
+
+        @Override
+        public Drawable newDrawable(Resources res) {
+            return new StackedFrameDrawable(this);
+        }
+
+        @Override
+        public int getChangingConfigurations() {
+            return changingConfigurations;
+        }
+    }
+
+    private static final class StateKey {
+        final int frameColor;
+        final float framePadding;
+        final int frameCount;
+
+        StateKey(int frameColor, float framePadding, int frameCount) {
+            this.frameColor = frameColor;
+            this.framePadding = framePadding;
+            this.frameCount = frameCount;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StateKey)) {
+                return false;
+            }
+            final StateKey other = (StateKey) o;
+            return frameColor == other.frameColor && frameCount == other.frameCount
+                    && Float.floatToIntBits(framePadding) == Float.floatToIntBits(other.framePadding);
+        }
+
+        @Override
+        public int hashCode() {
+            return (frameColor * 31 + Float.floatToIntBits(framePadding)) * 31 + frameCount;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.peirra.stacked;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+/**
+ * Draws the stacked frames of every visible item of a {@link RecyclerView} in a single pass, so grid
+ * cells no longer need to be wrapped in a {@link StackedLayout} or {@link StackedImageView}.
+ * <p>
+ * Each item is given {@code framePadding} on all sides through {@link #getItemOffsets}. If the adapter
+ * implements {@link FrameCountProvider} the frame count is read per item, otherwise every item uses the
+ * maximum frame count. All stacks are packed into one line buffer and drawn with a single
+ * {@code drawLines} call.
+ */
+public class StackedFrameItemDecoration extends RecyclerView.ItemDecoration {
+
+    /**
+     * Implemented by adapters that want a different number of frames per item.
+     */
+    public interface FrameCountProvider {
+        int getFrameCount(int position);
+    }
+
+    private static final int MAX_STROKE_WIDTH = 2;
+
+    private final float framePadding;
+    private final int frameMaxCount;
+    private final Paint borderPaint = new Paint();
+    private final FrameGeometry frameGeometry = new FrameGeometry();
+
+    public StackedFrameItemDecoration(int frameColor, float framePadding, int frameMaxCount) {
+        this.framePadding = framePadding;
+        this.frameMaxCount = frameMaxCount;
+        borderPaint.setAntiAlias(true);
+        borderPaint.setColor(frameColor);
+        borderPaint.setStyle(Paint.Style.STROKE);
+        // one paint for the whole pass, sized for the densest stack
+        borderPaint.setStrokeWidth(FrameGeometry.strokeWidth(framePadding, frameMaxCount, MAX_STROKE_WIDTH));
+        borderPaint.setStrokeCap(Paint.Cap.SQUARE);
+    }
+
+    @Override
+    public void getItemOffsets(Rect outRect, View view, RecyclerView parent, RecyclerView.State state) {
+        final int padding = (int) Math.ceil(framePadding);
+        outRect.set(padding, padding, padding, padding);
+    }
+
+    @Override
+    public void onDraw(Canvas c, RecyclerView parent, RecyclerView.State state) {
+        final RecyclerView.Adapter adapter = parent.getAdapter();
+        final FrameCountProvider provider = adapter instanceof FrameCountProvider ? (FrameCountProvider) adapter : null;
+        frameGeometry.reset();
+        final int count = parent.getChildCount();
+        for (int i = 0; i < count; i++) {
+            final View child = parent.getChildAt(i);
+            final int position = parent.getChildAdapterPosition(child);
+            if (position == RecyclerView.NO_POSITION) {
+                continue;
+            }
+            int frameCount = provider != null ? provider.getFrameCount(position) : frameMaxCount;
+            if (frameCount > frameMaxCount) {
+                frameCount = frameMaxCount;
+            }
+            final int tx = Math.round(ViewCompat.getTranslationX(child));
+            final int ty = Math.round(ViewCompat.getTranslationY(child));
+            frameGeometry.add(child.getLeft() + tx, child.getTop() + ty, child.getRight() + tx, child.getBottom() + ty,
+                    frameCount, FrameGeometry.frameOffset(framePadding, frameCount));
+        }
+        c.drawLines(frameGeometry.getLines(), 0, frameGeometry.getLineCount(), borderPaint);
+    }
+}
@@ -0,0 +1,101 @@
+package com.peirra.stacked;
+
+/**
+ * Closed form cell geometry of {@link StackedGridLayoutManager}.
+ * <p>
+ * A stacked cell only draws frames in the {@code framePadding} band above and to the right of its image,
+ * the bands to its left and below stay empty. Cells are therefore packed with a stride of the cell size
+ * minus that band, so the frames of one cell fill the empty gutter of its neighbor instead of reserving
+ * their own. Every position maps to its rectangle in O(1), nothing has to be precomputed per item.
+ */
+final class StackedGridGeometry {
+
+    private int spanCount = 1;
+    private int itemCount;
+    private int cellWidth;
+    private int cellHeight;
+    private int strideX = 1;
+    private int strideY = 1;
+
+    /**
+     * @param availableWidth width the columns have to fill
+     * @param overlap        width of the frame band shared by neighbors, the {@code framePadding} of the cells
+     * @param aspectRatio    width to height ratio of a cell, 0 for square cells
+     */
+    void set(int availableWidth, int spanCount, int overlap, float aspectRatio, int itemCount) {
+        this.spanCount = Math.max(1, spanCount);
+        this.itemCount = Math.max(0, itemCount);
+        //spanCount cells minus (spanCount - 1) shared bands span the available width
+        cellWidth = Math.max(1, (availableWidth + (this.spanCount - 1) * overlap) / this.spanCount);
+        cellHeight = aspectRatio > 0 ? Math.max(1, Math.round(cellWidth / aspectRatio)) : cellWidth;
+        strideX = Math.max(1, cellWidth - overlap);
+        strideY = Math.max(1, cellHeight - overlap);
+    }
+
+    int getCellWidth() {
+        return cellWidth;
+    }
+
+    int getCellHeight() {
+        return cellHeight;
+    }
+
+    int getStrideY() {
+        return strideY;
+    }
+
+    int getRowCount() {
+        return (itemCount + spanCount - 1) / spanCount;
+    }
+
+    int getRow(int position) {
+        return position / spanCount;
+    }
+
+    /**
+     * @return left edge of the cell relative to the first column
+     */
+    int getLeft(int position) {
+        return (position % spanCount) * strideX;
+    }
+
+    /**
+     * @return top edge of the cell relative to the top of the content
+     */
+    int getTop(int position) {
+        return (position / spanCount) * strideY;
+    }
+
+    int getContentHeight() {
+        final int rows = getRowCount();
+        return rows == 0 ? 0 : (rows - 1) * strideY + cellHeight;
+    }
+
+    /**
+     * @return first row reaching below {@code top}, in content coordinates
+     */
+    int getFirstRow(int top) {
+        final int span = top - cellHeight;
+        //floor division, the window may start above the content
+        final int row = span < 0 ? -((-span + strideY - 1) / strideY) : span / strideY;
+        return Math.max(0, row + 1);
+    }
+
+    /**
+     * @return last row starting above {@code bottom}, in content coordinates, -1 if there is none
+     */
+    int getLastRow(int bottom) {
+        if (bottom <= 0) {
+            return -1;
+        }
+        return Math.min(getRowCount() - 1, (bottom - 1) / strideY);
+    }
+
+    int getFirstPosition(int row) {
+        return row * spanCount;
+    }
+
+    int getLastPosition(int row) {
+        return Math.min(itemCount, (row + 1) * spanCount) - 1;
+    }
+}
@@ -0,0 +1,215 @@
+package com.peirra.stacked;
+
+import android.graphics.PointF;
+import android.graphics.Rect;
+import android.support.v7.widget.LinearSmoothScroller;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Vertically scrolling grid for stacked cells ({@link StackedLayout} or {@link StackedImageView} items).
+ * <p>
+ * A generic grid gives every stacked cell its whole {@code framePadding} on all four sides, although the
+ * frames only grow up and to the right. This layout manager overlaps neighbors by {@code framePadding} so
+ * the frame band of one cell sits in the empty gutter of the next, fitting more cells on screen, see
+ * {@link StackedGridGeometry}. Cells have a fixed aspect ratio, which keeps the position of every item
+ * known without measuring the ones in between.
+ * <p>
+ * Scrolling offsets the attached children and only binds the rows that come into view, rows leaving the
+ * window are recycled. {@link #setPrefetchRows(int) Prefetch rows} are bound and laid out ahead of the
+ * viewport in the scroll direction, so the binding work of the next row is done before it is needed.
+ */
+public class StackedGridLayoutManager extends RecyclerView.LayoutManager {
+
+    private static final int DEFAULT_PREFETCH_ROWS = 1;
+
+    private final StackedGridGeometry geometry = new StackedGridGeometry();
+    private final Rect decorInsets = new Rect();
+    private int spanCount;
+    private int overlap;
+    private float aspectRatio;
+    private int prefetchRows = DEFAULT_PREFETCH_ROWS;
+
+    private int scrollOffset;
+    private int lastDy;
+    private int pendingPosition = RecyclerView.NO_POSITION;
+
+    /**
+     * @param framePadding frame padding of the cells, neighbors overlap by this much
+     * @param aspectRatio  width to height ratio of a cell, 0 for square cells
+     */
+    public StackedGridLayoutManager(int spanCount, float framePadding, float aspectRatio) {
+        this.spanCount = spanCount;
+        this.overlap = (int) framePadding;
+        this.aspectRatio = aspectRatio;
+    }
+
+    public void setSpanCount(int spanCount) {
+        if (this.spanCount != spanCount) {
+            this.spanCount = spanCount;
+            requestLayout();
+        }
+    }
+
+    /**
+     * Sets how many rows beyond the viewport are kept bound in the scroll direction, defaults to 1.
+     */
+    public void setPrefetchRows(int prefetchRows) {
+        this.prefetchRows = Math.max(0, prefetchRows);
+    }
+
+    @Override
+    public RecyclerView.LayoutParams generateDefaultLayoutParams() {
+        return new RecyclerView.LayoutParams(ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
+    }
+
+    @Override
+    public boolean canScrollVertically() {
+        return true;
+    }
+
+    @Override
+    public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+        final int itemCount = state.getItemCount();
+        if (itemCount == 0) {
+            removeAndRecycleAllViews(recycler);
+            scrollOffset = 0;
+            return;
+        }
+        geometry.set(getWidth() - getPaddingLeft() - getPaddingRight(), spanCount, overlap, aspectRatio, itemCount);
+        if (pendingPosition != RecyclerView.NO_POSITION) {
+            scrollOffset = geometry.getTop(Math.min(pendingPosition, itemCount - 1));
+            pendingPosition = RecyclerView.NO_POSITION;
+        }
+        scrollOffset = clampScroll(scrollOffset);
+        detachAndScrapAttachedViews(recycler);
+        fill(recycler);
+    }
+
+    @Override
+    public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
+        if (getChildCount() == 0) {
+            return 0;
+        }
+        final int consumed = clampScroll(scrollOffset + dy) - scrollOffset;
+        if (consumed == 0) {
+            return 0;
+        }
+        scrollOffset += consumed;
+        lastDy = consumed;
+        offsetChildrenVertical(-consumed);
+        fill(recycler);
+        return consumed;
+    }
+
+    @Override
+    public void scrollToPosition(int position) {
+        pendingPosition = position;
+        requestLayout();
+    }
+
+    @Override
+    public void smoothScrollToPosition(RecyclerView recyclerView, RecyclerView.State state, int position) {
+        final LinearSmoothScroller scroller = new LinearSmoothScroller(recyclerView.getContext()) {
+            @Override
+            public PointF computeScrollVectorForPosition(int targetPosition) {
+                final StackedGridLayoutManager layout = StackedGridLayoutManager.this;
+                if (layout.getChildCount() == 0) {
+                    return null;
+                }
+                return new PointF(0, targetPosition < layout.getPosition(layout.getChildAt(0)) ? -1 : 1);
+            }
+        };
+        scroller.setTargetPosition(position);
+        startSmoothScroll(scroller);
+    }
+
+    @Override
+    public int computeVerticalScrollOffset(RecyclerView.State state) {
+        return scrollOffset;
+    }
+
+    @Override
+    public int computeVerticalScrollExtent(RecyclerView.State state) {
+        return getVerticalSpace();
+    }
+
+    @Override
+    public int computeVerticalScrollRange(RecyclerView.State state) {
+        return geometry.getContentHeight();
+    }
+
+    /**
+     * Recycles the rows outside the window and adds the missing ones, keeping children in adapter order.
+     */
+    private void fill(RecyclerView.Recycler recycler) {
+        int top = scrollOffset;
+        int bottom = scrollOffset + getVerticalSpace();
+        final int prefetch = prefetchRows * geometry.getStrideY();
+        if (lastDy > 0) {
+            bottom += prefetch;
+        } else if (lastDy < 0) {
+            top -= prefetch;
+        }
+        final int firstRow = geometry.getFirstRow(top);
+        final int lastRow = geometry.getLastRow(bottom);
+        if (lastRow < firstRow) {
+            removeAndRecycleAllViews(recycler);
+            return;
+        }
+        final int firstPosition = geometry.getFirstPosition(firstRow);
+        final int lastPosition = geometry.getLastPosition(lastRow);
+
+        for (int i = getChildCount() - 1; i >= 0; i--) {
+            final View child = getChildAt(i);
+            final int position = getPosition(child);
+            if (position < firstPosition || position > lastPosition) {
+                removeAndRecycleView(child, recycler);
+            }
+        }
+
+        if (getChildCount() == 0) {
+            for (int position = firstPosition; position <= lastPosition; position++) {
+                addCell(recycler, position, -1);
+            }
+            return;
+        }
+        final int attachedFirst = getPosition(getChildAt(0));
+        final int attachedLast = getPosition(getChildAt(getChildCount() - 1));
+        for (int position = firstPosition; position < attachedFirst; position++) {
+            addCell(recycler, position, position - firstPosition);
+        }
+        for (int position = attachedLast + 1; position <= lastPosition; position++) {
+            addCell(recycler, position, -1);
+        }
+    }
+
+    private void addCell(RecyclerView.Recycler recycler, int position, int index) {
+        final View child = recycler.getViewForPosition(position);
+        addView(child, index);
+        final RecyclerView.LayoutParams lp = (RecyclerView.LayoutParams) child.getLayoutParams();
+        final int cellWidth = geometry.getCellWidth();
+        final int cellHeight = geometry.getCellHeight();
+        calculateItemDecorationsForChild(child, decorInsets);
+        final int width = cellWidth - lp.leftMargin - lp.rightMargin - decorInsets.left - decorInsets.right;
+        final int height = cellHeight - lp.topMargin - lp.bottomMargin - decorInsets.top - decorInsets.bottom;
+        child.measure(View.MeasureSpec.makeMeasureSpec(Math.max(0, width), View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(Math.max(0, height), View.MeasureSpec.EXACTLY));
+
+        final int left = getPaddingLeft() + geometry.getLeft(position) + lp.leftMargin;
+        final int top = getPaddingTop() + geometry.getTop(position) - scrollOffset + lp.topMargin;
+        layoutDecorated(child, left, top,
+                left + cellWidth - lp.leftMargin - lp.rightMargin,
+                top + cellHeight - lp.topMargin - lp.bottomMargin);
+    }
+
+    private int clampScroll(int offset) {
+        final int max = Math.max(0, geometry.getContentHeight() - getVerticalSpace());
+        return Math.max(0, Math.min(max, offset));
+    }
+
+    private int getVerticalSpace() {
+        return getHeight() - getPaddingTop() - getPaddingBottom();
+    }
+}
@@ -0,0 +1,490 @@
+package com.peirra.stacked;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decodes images for {@link StackedImageView} off the main thread, downsampled to the size they are
+ * displayed at.
+ * <p>
+ * Decoded bitmaps are kept in an LRU memory cache keyed by source and target size. The cache is trimmed
+ * when the system reports memory pressure through {@link ComponentCallbacks2#onTrimMemory(int)}.
+ * <p>
+ * An optional {@link MappedThumbnailStore} adds a persistent tier: thumbnails are stored already scaled
+ * to the requested size, so after a restart they are copied into a bitmap without decoding. Callers can
+ * hand back a bitmap of an earlier hit to be refilled instead of allocating one. Only
+ * {@link ImageSource#isPersistable() persistable} sources are stored there.
+ */
+public final class StackedImageLoader {
+
+    private static final String TAG = StackedImageLoader.class.getSimpleName();
+    private static final int DECODE_THREADS = 2;
+
+    private static StackedImageLoader sInstance;
+
+    /**
+     * Receives the result of a load on the main thread. Not called once the request is cancelled.
+     */
+    public interface Callback {
+        void onImageLoaded(Bitmap bitmap);
+
+        void onImageFailed(Exception e);
+    }
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor;
+    private final LruCache<String, Bitmap> memoryCache;
+    private volatile MappedThumbnailStore diskStore;
+
+    private StackedImageLoader(Context context) {
+        this.context = context.getApplicationContext();
+        // an eighth of the heap, the usual share for a bitmap cache
+        memoryCache = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 8)) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+        executor = Executors.newFixedThreadPool(DECODE_THREADS, new ThreadFactory() {
+            private int count;
+
+            @Override
+            public Thread newThread(final Runnable r) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        r.run();
+                    }
+                }, "StackedImageLoader-" + (++count));
+            }
+        });
+        this.context.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                trimMemory(level);
+            }
+
+            @Override
+            public void onConfigurationChanged(Configuration newConfig) {
+            }
+
+            @Override
+            public void onLowMemory() {
+                memoryCache.evictAll();
+            }
+        });
+    }
+
+    public static synchronized StackedImageLoader getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new StackedImageLoader(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Loads the source downsampled to at least the given size. Must be called on the main thread. A
+     * memory cache hit is delivered before this method returns if the {@link ImageSource#peekKey() key} of
+     * the source is already known, otherwise the key is computed and looked up on the loader thread.
+     *
+     * @return a handle to cancel the request, or null if it completed synchronously
+     */
+    public Request load(ImageSource source, int width, int height, Callback callback) {
+        return load(source, width, height, false, null, callback);
+    }
+
+    /**
+     * Same as {@link #load(ImageSource, int, int, Callback)}, except that a thumbnail read from the
+     * persistent store is handed over to the caller instead of being shared: it is copied into
+     * {@code reuse} if that has the same size, into a new bitmap otherwise, and kept out of the memory
+     * cache. {@link Request#isOwned()} tells such a result apart, it can be passed back as {@code reuse}
+     * once it is no longer drawn.
+     *
+     * @param reuse a mutable bitmap owned by the caller and no longer drawn, or null
+     */
+    public Request load(ImageSource source, int width, int height, Bitmap reuse, Callback callback) {
+        return load(source, width, height, true, reuse, callback);
+    }
+
+    private Request load(ImageSource source, int width, int height, boolean owning, Bitmap reuse,
+                         Callback callback) {
+        final Bitmap cached = peek(cacheKey(source.peekKey(), width, height));
+        if (cached != null) {
+            callback.onImageLoaded(cached);
+            return null;
+        }
+        final Request request = new Request(source, null, new int[]{width, height}, new Callback[]{callback});
+        request.owning = owning;
+        request.reuse = reuse;
+        request.future = executor.submit(request);
+        return request;
+    }
+
+    /**
+     * Loads only part of the source, given as fractions of its size, downsampled to at least the given
+     * size. Only the region is decoded, which keeps thin slivers of large images cheap.
+     *
+     * @return a handle to cancel the request, or null if it completed synchronously
+     */
+    public Request loadRegion(ImageSource source, float left, float top, float right, float bottom,
+                              int width, int height, Callback callback) {
+        return loadRegions(source, new float[]{left, top, right, bottom}, new int[]{width, height},
+                new Callback[]{callback});
+    }
+
+    /**
+     * Loads several parts of the same source, see {@link #loadRegion}. The source is opened and parsed
+     * once for all of them.
+     *
+     * @param regions   left, top, right and bottom fractions of every region
+     * @param sizes     width and height to downsample every region to
+     * @param callbacks one per region
+     * @return a handle cancelling every region, or null if they all completed synchronously
+     */
+    public Request loadRegions(ImageSource source, float[] regions, int[] sizes, Callback[] callbacks) {
+        final String sourceKey = source.peekKey();
+        final float[] missingRegions = new float[regions.length];
+        final int[] missingSizes = new int[sizes.length];
+        final Callback[] missingCallbacks = new Callback[callbacks.length];
+        int missing = 0;
+        for (int i = 0; i < callbacks.length; i++) {
+            final Bitmap cached = peek(regionKey(sourceKey, regions, 4 * i, sizes[2 * i], sizes[2 * i + 1]));
+            if (cached != null) {
+                callbacks[i].onImageLoaded(cached);
+                continue;
+            }
+            System.arraycopy(regions, 4 * i, missingRegions, 4 * missing, 4);
+            missingSizes[2 * missing] = sizes[2 * i];
+            missingSizes[2 * missing + 1] = sizes[2 * i + 1];
+            missingCallbacks[missing++] = callbacks[i];
+        }
+        if (missing == 0) {
+            return null;
+        }
+        final Request request = new Request(source, Arrays.copyOf(missingRegions, 4 * missing),
+                Arrays.copyOf(missingSizes, 2 * missing), Arrays.copyOf(missingCallbacks, missing));
+        request.future = executor.submit(request);
+        return request;
+    }
+
+    /**
+     * Enables the persistent thumbnail tier, pass null to disable it.
+     */
+    public void setDiskStore(MappedThumbnailStore diskStore) {
+        this.diskStore = diskStore;
+    }
+
+    void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            memoryCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            memoryCache.trimToSize(memoryCache.size() / 2);
+        }
+    }
+
+    /**
+     * Decodes the source with the largest power of two sample size that keeps it at least as big as the
+     * requested size.
+     */
+    Bitmap decode(ImageSource source, int width, int height) throws IOException {
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        InputStream in = new BufferedInputStream(source.open(context));
+        try {
+            BitmapFactory.decodeStream(in, null, options);
+        } finally {
+            in.close();
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, width, height);
+        options.inJustDecodeBounds = false;
+        in = new BufferedInputStream(source.open(context));
+        try {
+            final Bitmap bitmap = BitmapFactory.decodeStream(in, null, options);
+            if (bitmap == null) {
+                throw new IOException("Unable to decode " + source.getKey());
+            }
+            return bitmap;
+        } finally {
+            in.close();
+        }
+    }
+
+    BitmapRegionDecoder newRegionDecoder(ImageSource source) throws IOException {
+        final InputStream in = new BufferedInputStream(source.open(context));
+        try {
+            return BitmapRegionDecoder.newInstance(in, false);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @param offset index of the left fraction of the region in {@code regions}
+     */
+    static Bitmap decodeRegion(BitmapRegionDecoder decoder, ImageSource source, float[] regions, int offset,
+                               int width, int height) throws IOException {
+        final int sourceWidth = decoder.getWidth();
+        final int sourceHeight = decoder.getHeight();
+        final Rect rect = new Rect(
+                Math.round(regions[offset] * sourceWidth), Math.round(regions[offset + 1] * sourceHeight),
+                Math.round(regions[offset + 2] * sourceWidth), Math.round(regions[offset + 3] * sourceHeight));
+        if (rect.isEmpty()) {
+            throw new IOException("Empty region of " + source.getKey());
+        }
+        final BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(rect.width(), rect.height(), width, height);
+        final Bitmap bitmap = decoder.decodeRegion(rect, options);
+        if (bitmap == null) {
+            throw new IOException("Unable to decode " + source.getKey());
+        }
+        return bitmap;
+    }
+
+    /**
+     * @param reuse filled instead of allocating a bitmap if it has the size of the thumbnail, may be null
+     */
+    private static Bitmap readThumbnail(MappedThumbnailStore store, String key, Bitmap reuse) {
+        synchronized (store) {
+            final MappedThumbnailStore.Entry entry = store.get(key);
+            if (entry == null) {
+                return null;
+            }
+            final Bitmap bitmap = reuse != null && !reuse.isRecycled() && reuse.isMutable()
+                    && reuse.getConfig() == Bitmap.Config.ARGB_8888
+                    && reuse.getWidth() == entry.width && reuse.getHeight() == entry.height
+                    ? reuse : Bitmap.createBitmap(entry.width, entry.height, Bitmap.Config.ARGB_8888);
+            bitmap.copyPixelsFromBuffer(entry.pixels);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Scales the decoded bitmap down to just cover the requested size and stores its pixels.
+     *
+     * @return the bitmap to display, scaled if needed
+     */
+    private static Bitmap writeThumbnail(MappedThumbnailStore store, String key, Bitmap bitmap, int width, int height) {
+        final float scale = Math.max((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+        if (scale < 1f) {
+            final Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                    Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+            if (scaled != bitmap) {
+                bitmap.recycle();
+                bitmap = scaled;
+            }
+        }
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            return bitmap;
+        }
+        final ByteBuffer pixels = ByteBuffer.allocate(bitmap.getByteCount());
+        bitmap.copyPixelsToBuffer(pixels);
+        pixels.flip();
+        try {
+            store.put(key, bitmap.getWidth(), bitmap.getHeight(), pixels);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to store thumbnail " + key, e);
+        }
+        return bitmap;
+    }
+
+    public static int calculateInSampleSize(int sourceWidth, int sourceHeight, int width, int height) {
+        int inSampleSize = 1;
+        if (width <= 0 || height <= 0) {
+            return inSampleSize;
+        }
+        while ((sourceWidth / (inSampleSize * 2)) >= width && (sourceHeight / (inSampleSize * 2)) >= height) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private Bitmap peek(String key) {
+        return key != null ? memoryCache.get(key) : null;
+    }
+
+    private static String cacheKey(String sourceKey, int width, int height) {
+        return sourceKey == null ? null : sourceKey + "@" + width + "x" + height;
+    }
+
+    private static String regionKey(String sourceKey, float[] regions, int offset, int width, int height) {
+        return sourceKey == null ? null : sourceKey + "[" + regions[offset] + "," + regions[offset + 1] + ","
+                + regions[offset + 2] + "," + regions[offset + 3] + "]@" + width + "x" + height;
+    }
+
+    public int hitCount() {
+        return memoryCache.hitCount();
+    }
+
+    public int missCount() {
+        return memoryCache.missCount();
+    }
+
+    /**
+     * A pending load, cancelled when the view is rebound or detached.
+     */
+    public final class Request implements Runnable {
+        private final ImageSource source;
+        private final float[] regions; // null to load the whole image
+        private final int[] sizes;
+        private final Callback[] callbacks;
+        private volatile boolean cancelled;
+        private Future<?> future;
+        private int delivered; // main thread only
+        private boolean owning;
+        private Bitmap reuse;
+        private volatile boolean owned;
+
+        Request(ImageSource source, float[] regions, int[] sizes, Callback[] callbacks) {
+            this.source = source;
+            this.regions = regions;
+            this.sizes = sizes;
+            this.callbacks = callbacks;
+        }
+
+        public void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true once every image or region of the request was delivered, call on the main thread
+         */
+        public boolean isFinished() {
+            return delivered == callbacks.length;
+        }
+
+        /**
+         * @return true if the delivered bitmap belongs to the caller, see
+         * {@link #load(ImageSource, int, int, Bitmap, Callback)}
+         */
+        public boolean isOwned() {
+            return owned;
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            if (regions == null) {
+                loadImage();
+            } else {
+                loadRegions();
+            }
+        }
+
+        private void loadImage() {
+            final int width = sizes[0];
+            final int height = sizes[1];
+            try {
+                // the key may need I/O or hashing, it is only computed here
+                final String key = cacheKey(source.getKey(), width, height);
+                final Bitmap cached = peek(key);
+                if (cached != null) {
+                    deliver(0, cached, null);
+                    return;
+                }
+                // only keys known to name the same image after a restart are persisted
+                final MappedThumbnailStore store = key != null && source.isPersistable() ? diskStore : null;
+                Bitmap bitmap = store != null ? readThumbnail(store, key, owning ? reuse : null) : null;
+                reuse = null;
+                if (bitmap != null && owning) {
+                    // the caller's own copy, shared bitmaps could not be refilled
+                    owned = true;
+                    deliver(0, bitmap, null);
+                    return;
+                }
+                if (bitmap == null) {
+                    bitmap = decode(source, width, height);
+                    if (store != null) {
+                        bitmap = writeThumbnail(store, key, bitmap, width, height);
+                    }
+                }
+                if (key != null) {
+                    memoryCache.put(key, bitmap);
+                }
+                deliver(0, bitmap, null);
+            } catch (Exception e) {
+                deliver(0, null, e);
+            }
+        }
+
+        private void loadRegions() {
+            BitmapRegionDecoder decoder = null;
+            int i = 0;
+            try {
+                final String sourceKey = source.getKey();
+                for (; i < callbacks.length && !cancelled; i++) {
+                    final String key = regionKey(sourceKey, regions, 4 * i, sizes[2 * i], sizes[2 * i + 1]);
+                    Bitmap bitmap = peek(key);
+                    if (bitmap == null) {
+                        if (decoder == null) {
+                            // parsed once for every region of the source
+                            decoder = newRegionDecoder(source);
+                        }
+                        bitmap = decodeRegion(decoder, source, regions, 4 * i, sizes[2 * i], sizes[2 * i + 1]);
+                        if (key != null) {
+                            memoryCache.put(key, bitmap);
+                        }
+                    }
+                    deliver(i, bitmap, null);
+                }
+            } catch (Exception e) {
+                // the regions left fail with the first one that did
+                for (; i < callbacks.length; i++) {
+                    deliver(i, null, e);
+                }
+            } finally {
+                if (decoder != null) {
+                    decoder.recycle();
+                }
+            }
+        }
+
+        private void deliver(final int index, final Bitmap bitmap, final Exception error) {
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (cancelled) {
+                        return;
+                    }
+                    delivered++;
+                    if (bitmap != null) {
+                        callbacks[index].onImageLoaded(bitmap);
+                    } else {
+                        callbacks[index].onImageFailed(error);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -1,22 +1,34 @@
 package com.peirra.stacked;
 
 import android.content.Context;
-import android.content.res.TypedArray;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.support.v4.view.ViewCompat;
 import android.util.AttributeSet;
-import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.animation.AnimationUtils;
+import android.view.animation.Interpolator;
 import android.widget.ImageView;
 import android.widget.ImageView.ScaleType;
 
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+
 
 /**
- * This is a
+ * An image surrounded by a stack of frames. The image is drawn directly by this view, a child
+ * {@link ImageView} is only created when {@link #getImageView()} is called.
  */
 
 public class StackedImageView extends ViewGroup {
@@ -27,21 +39,94 @@ public class StackedImageView extends ViewGroup {
     private float framePadding = 0;
 
     private  Rect viewBounds = new Rect();
-    private final Rect frameBounds = new Rect();
     private final Rect imageBounds = new Rect();
     private final Paint borderPaint = new Paint();
 
     private int MAX_STROKE_WIDTH = 2;
     private int frameCount = 10;
     private int frameMaxCount = frameCount;
-    private int frameDelta = 1;
+    private float frameOffset = 1;
     private int strokeWith = MAX_STROKE_WIDTH;
-    private final float[] verticalLong = new float[4];
-    private final float[] verticalShort = new float[4];
-    private final float[] horizontalLong = new float[4];
-    private final float[] horizontalShort = new float[4];
+    private final FrameGeometry frameGeometry = new FrameGeometry();
+    private final MeasureCache measureCache = new MeasureCache(12);
+    private final StackMeasure stackMeasure = new StackMeasure();
+    private boolean layoutDirty = true;
+    private StackedFrameCache frameCache;
+    private StackedFrameCache.Frames cachedFrames;
+    private StyledFrames styledFrames;
+    private FrameBand frameBand;
+    private int qualityLevel = StackedQualityGovernor.LEVEL_FULL;
+    private final StackedQualityGovernor.Listener qualityListener = new StackedQualityGovernor.Listener() {
+        @Override
+        public void onQualityChanged(int oldLevel, int newLevel) {
+            setQualityLevel(newLevel);
+        }
+    };
+    private final FrameCountAnimator frameAnimator = new FrameCountAnimator(this, new FrameCountAnimator.Host() {
+        @Override
+        public void onAnimatedFrameCount(int count) {
+            if (count != frameCount) {
+                final float oldTop = frameGeometry.getTop();
+                final float oldRight = frameGeometry.getRight();
+                final int oldStroke = strokeWith;
+                computeFrames(count);
+                invalidateFrameBand(oldTop, oldRight, oldStroke);
+            }
+        }
+
+        @Override
+        public void onFrameCountAnimationEnd() {
+            loadLayerImages();
+        }
+    });
+
+    private Drawable drawable;
+    private ScaleType scaleType = ScaleType.FIT_XY;
+    private final Matrix drawMatrix = new Matrix();
+    private boolean hasDrawMatrix;
+    private final RectF tempSrc = new RectF();
+    private final RectF tempDst = new RectF();
+    private int contentWidth;
+    private int contentHeight;
+
+    private ImageView imageView; // only created for callers of getImageView()
 
-    private ImageView imageView;
+    private ImageSource imageSource;
+    private StackedImageLoader.Request imageRequest;
+    private ImageSource[] layerSources;
+    private Bitmap[] layerStrips; // top then right sliver of every layer behind the image
+    private StackedImageLoader.Request[] layerRequests;
+    private int layerStripsWidth;
+    private int layerStripsHeight;
+    private int layerStripsDelta = -1; // sliver size the strips were decoded at
+    private final RectF layerRect = new RectF();
+    private final Paint layerPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    private static final int PLACEHOLDER_FADE_DURATION = 200;
+    private static final StackPlaceholder sPlaceholderDecoder = new StackPlaceholder(); // main thread only
+    private Bitmap placeholderBitmap; // decoded placeholder, scaled up with filtering
+    private final Paint placeholderPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private boolean placeholderVisible;
+    private boolean placeholderDrawn;
+    private long placeholderFadeStart = -1;
+
+    private BitmapDrawable ownedDrawable; // shows a bitmap of the thumbnail store only this view uses
+    private final StackedImageLoader.Callback imageCallback = new StackedImageLoader.Callback() {
+        @Override
+        public void onImageLoaded(Bitmap bitmap) {
+            final boolean owned = imageRequest != null && imageRequest.isOwned();
+            imageRequest = null;
+            final BitmapDrawable imageDrawable = new BitmapDrawable(getResources(), bitmap);
+            ownedDrawable = owned ? imageDrawable : null;
+            applyImageDrawable(imageDrawable);
+        }
+
+        @Override
+        public void onImageFailed(Exception e) {
+            imageRequest = null;
+            imageSource = null; // don't retry on every layout pass
+        }
+    };
 
     private static final ScaleType[] sScaleTypeArray = {
             ScaleType.MATRIX,
@@ -69,12 +154,28 @@ public class StackedImageView extends ViewGroup {
         init(attrs, defStyle);
     }
 
+    /**
+     * Creates the view in code from a spec, without resolving any XML attributes or styles.
+     */
+    public StackedImageView(Context context, StackSpec spec) {
+        super(context);
+        frameColor = spec.getFrameColor();
+        framePadding = spec.getFramePadding();
+        frameMaxCount = spec.getFrameMaxCount();
+        initView(spec.getFrameCount(), frameColor, FrameVertices.CURVE_LINEAR, 0, Color.TRANSPARENT,
+                spec.getScaleType(), null);
+    }
+
     private void init(AttributeSet attrs, int defStyle) {
-        final TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.StackedImageView, defStyle, 0);
+        final CachedAttributes a = CachedAttributes.obtain(getContext(), attrs, R.styleable.StackedImageView, defStyle, 0);
         frameColor = a.getColor(R.styleable.StackedImageView_siv_frameColor, frameColor);
         framePadding = a.getDimension(R.styleable.StackedImageView_siv_framePadding, framePadding);
         frameCount = a.getInt(R.styleable.StackedImageView_siv_frameCount, frameMaxCount);
         frameMaxCount = a.getInt(R.styleable.StackedImageView_siv_frameMaxCount, frameMaxCount);
+        final int frameEndColor = a.getColor(R.styleable.StackedImageView_siv_frameEndColor, frameColor);
+        final int frameAlphaCurve = a.getInt(R.styleable.StackedImageView_siv_frameAlphaCurve, FrameVertices.CURVE_LINEAR);
+        final float frameShadowOffset = a.getDimension(R.styleable.StackedImageView_siv_frameShadowOffset, 0);
+        final int frameShadowColor = a.getColor(R.styleable.StackedImageView_siv_frameShadowColor, Color.TRANSPARENT);
         if(frameCount > frameMaxCount){
             frameCount = frameMaxCount;
         }
@@ -83,25 +184,25 @@ public class StackedImageView extends ViewGroup {
 
         final Drawable d = a.getDrawable(R.styleable.StackedImageView_android_src);
 
-        a.recycle();
+        initView(frameCount, frameEndColor, frameAlphaCurve, frameShadowOffset, frameShadowColor,
+                index >= 0 ? sScaleTypeArray[index] : ScaleType.FIT_XY, d);
+    }
+
+    private void initView(int frameCount, int frameEndColor, int frameAlphaCurve, float frameShadowOffset,
+                          int frameShadowColor, ScaleType scaleType, Drawable d) {
         borderPaint.setAntiAlias(true);
         borderPaint.setColor(frameColor);
         borderPaint.setStyle(Paint.Style.STROKE);
         borderPaint.setStrokeWidth(strokeWith);
         borderPaint.setStrokeCap(Paint.Cap.SQUARE);
+        setFrameStyle(frameEndColor, frameAlphaCurve, frameShadowOffset, frameShadowColor);
 
 
-        imageView = new ImageView(getContext());
-        imageView.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT,LayoutParams.MATCH_PARENT));
-        if (index >= 0) {
-            setScaleType(sScaleTypeArray[index]);
-        }else{
-            setScaleType(ScaleType.FIT_XY);
-        }
+        setWillNotDraw(false); // the image is drawn by this view, not by a child
+        setScaleType(scaleType);
         if (d != null) {
             setImageDrawable(d);
         }
-        addView(imageView);
         setFrameCount(frameCount);
     }
 
@@ -116,10 +217,34 @@ public class StackedImageView extends ViewGroup {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (!StackedMetrics.ENABLED) {
+            measureStack(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        final long start = StackedMetrics.begin(StackedMetrics.STACKED_IMAGE_VIEW, StackedMetrics.MEASURE);
+        measureStack(widthMeasureSpec, heightMeasureSpec);
+        StackedMetrics.end(StackedMetrics.STACKED_IMAGE_VIEW, StackedMetrics.MEASURE, start);
+    }
+
+    private void measureStack(int widthMeasureSpec, int heightMeasureSpec) {
         int count = getChildCount();
+        if (isMeasureCached(widthMeasureSpec, heightMeasureSpec, count)) {
+            setMeasuredDimension(measureCache.getWidthAndState(), measureCache.getHeightAndState());
+            return;
+        }
+        layoutDirty = true;
         int height = 0;
         int width = 0;
         int childState = 0;
+        if (imageView == null) {
+            // Measure the drawable the same way the hosted MATCH_PARENT ImageView was measured.
+            contentWidth = resolveSize(getIntrinsicWidth(),
+                    getChildMeasureSpec(widthMeasureSpec, getPaddingLeft() + getPaddingRight(), LayoutParams.MATCH_PARENT));
+            contentHeight = resolveSize(getIntrinsicHeight(),
+                    getChildMeasureSpec(heightMeasureSpec, getPaddingTop() + getPaddingBottom(), LayoutParams.MATCH_PARENT));
+            width = contentWidth;
+            height = contentHeight;
+        }
         for (int i = 0; i < count; i++) {
             final View child = getChildAt(i);
             if (child.getVisibility() != GONE) {
@@ -132,30 +257,168 @@ public class StackedImageView extends ViewGroup {
             }
         }
         // Check against our minimum height and width
-        height = (int) (Math.max(height, getSuggestedMinimumHeight()) - (2 * framePadding));
-        width  = (int) (Math.max(width, getSuggestedMinimumWidth()) - (2 * framePadding));
+        height = StackMeasure.measuredSize(height, getSuggestedMinimumHeight(), framePadding);
+        width = StackMeasure.measuredSize(width, getSuggestedMinimumWidth(), framePadding);
         // Report our final dimensions.
         setMeasuredDimension(resolveSizeAndState(width, widthMeasureSpec, childState),
                 resolveSizeAndState(height, heightMeasureSpec,childState << MEASURED_HEIGHT_STATE_SHIFT));
         viewBounds.set(strokeWith, strokeWith, getMeasuredWidth() - getPaddingRight(), getMeasuredHeight() - getPaddingTop());
+        measureCache.store(getMeasuredWidthAndState(), getMeasuredHeightAndState());
+    }
+
+    /**
+     * @return true if nothing that feeds into onMeasure changed since the last pass, the same children are
+     * shown and none of them asked for a new layout, in which case the last result can be reused as is
+     */
+    private boolean isMeasureCached(int widthMeasureSpec, int heightMeasureSpec, int count) {
+        measureCache.begin();
+        measureCache.key(widthMeasureSpec);
+        measureCache.key(heightMeasureSpec);
+        measureCache.key(framePadding);
+        measureCache.key(count);
+        measureCache.key(getPaddingLeft());
+        measureCache.key(getPaddingTop());
+        measureCache.key(getPaddingRight());
+        measureCache.key(getPaddingBottom());
+        measureCache.key(getSuggestedMinimumWidth());
+        measureCache.key(getSuggestedMinimumHeight());
+        measureCache.key(getIntrinsicWidth());
+        measureCache.key(getIntrinsicHeight());
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            measureCache.child(child, child.getVisibility());
+        }
+        return measureCache.isHit() && !isChildLayoutRequested();
+    }
 
+    /**
+     * @return true if any child asked for a new layout, whatever its visibility
+     */
+    private boolean isChildLayoutRequested() {
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            if (getChildAt(i).isLayoutRequested()) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
     public void setFrameCount(int frameCount) {
+        frameAnimator.cancel();
         if(frameCount > frameMaxCount){
             frameCount = frameMaxCount;
         }
         recalculateFrames(frameCount);
     }
 
+    /**
+     * Animates the stack from its current frame count to the new one. Only the frame band is redrawn on
+     * every step and the view runs on a hardware layer until the animation ends.
+     *
+     * @param interpolator null for linear
+     */
+    public void setFrameCount(int frameCount, long duration, Interpolator interpolator) {
+        if(frameCount > frameMaxCount){
+            frameCount = frameMaxCount;
+        }
+        frameAnimator.start(this.frameCount, frameCount, duration, interpolator);
+    }
+
+
+    /**
+     * Applies a whole configuration at once with a single invalidate. When the spec was
+     * {@link StackSpec#precompute precomputed} for the current size and padding, and the image was laid out
+     * over the whole content box as with exact measure specs, its frame geometry is copied as is and no new
+     * layout is requested, even if the frame padding changed. Otherwise the frames
+     * are rebuilt here, or on the next layout if the frame padding changed.
+     */
+    public void bind(StackSpec spec){
+        frameAnimator.cancel();
+        final boolean paddingChanged = framePadding != spec.getFramePadding();
+        frameMaxCount = spec.getFrameMaxCount();
+        frameCount = spec.getFrameCount();
+        framePadding = spec.getFramePadding();
+        frameOffset = spec.getFrameOffset();
+        strokeWith = spec.getStrokeWidth();
+        borderPaint.setStrokeWidth(strokeWith);
+        if(frameColor != spec.getFrameColor()){
+            frameColor = spec.getFrameColor();
+            borderPaint.setColor(frameColor);
+            if(styledFrames != null){
+                styledFrames.setStartColor(frameColor);
+            }
+        }
+        if(imageView != null){
+            imageView.setScaleType(spec.getScaleType());
+        }else{
+            scaleType = spec.getScaleType();
+        }
+
+        if(imageView == null && getWidth() > 0 && !isLayoutRequested() && drawnFrameCount() == frameCount && fillsContent()
+                && spec.isPrecomputedFor(getWidth(), getHeight(), getPaddingLeft(), getPaddingTop(), getPaddingRight(), getPaddingBottom())){
+            imageBounds.set(spec.getImageBounds());
+            frameGeometry.set(spec.getGeometry());
+            rebuildFrameFill();
+            configureDrawable();
+        }else if(paddingChanged){
+            // the image bounds move, the next layout rebuilds the frames around them
+            requestLayout();
+        }else{
+            rebuildFrames();
+            configureDrawable();
+        }
+        loadLayerImages();
+        invalidate();
+    }
+
+    /**
+     * @return true if the image was measured to the whole content box, which is what a precomputed
+     * {@link StackSpec} assumes. Wrap content and at most specs measure it to the drawable instead.
+     */
+    private boolean fillsContent(){
+        return getChildCount() == 0
+                && contentWidth == getWidth() - getPaddingLeft() - getPaddingRight()
+                && contentHeight == getHeight() - getPaddingTop() - getPaddingBottom();
+    }
 
     private void recalculateFrames(int frameCount){
+        final float oldTop = frameGeometry.getTop();
+        final float oldRight = frameGeometry.getRight();
+        final int oldStroke = strokeWith;
+        computeFrames(frameCount);
+        loadLayerImages();
+        invalidateFrameBand(oldTop, oldRight, oldStroke);
+    }
+
+    private void computeFrames(int frameCount){
         this.frameCount = frameCount;
-        strokeWith = Math.min(MAX_STROKE_WIDTH,(int) Math.floor(framePadding / frameCount) / 2);
+        strokeWith = FrameGeometry.strokeWidth(framePadding, frameCount, MAX_STROKE_WIDTH);
         borderPaint.setStrokeWidth(strokeWith);
-        frameDelta = (int) Math.floor(framePadding / (float) frameCount);
-        invalidate();
+        rebuildFrames();
+    }
+
+    /**
+     * Invalidates the band between the image and the outer frame, covering both the frames that were drawn
+     * before the change and the ones drawn after it. The image area itself is left alone, unless the stroke
+     * width changed and the whole view is redrawn.
+     *
+     * @param oldTop   top of the outer frame before the change
+     * @param oldRight right edge of the outer frame before the change
+     * @param oldStroke stroke width before the change
+     */
+    private void invalidateFrameBand(float oldTop, float oldRight, int oldStroke){
+        if(imageBounds.isEmpty() || oldStroke != strokeWith){
+            // a new stroke also changes the left and bottom edges of the frame around the image
+            invalidate();
+            return;
+        }
+        final int stroke = MAX_STROKE_WIDTH + (styledFrames != null ? (int) Math.ceil(styledFrames.getShadowOffset()) : 0);
+        final int top = (int) Math.floor(Math.min(oldTop, frameGeometry.getTop())) - stroke;
+        final int right = (int) Math.ceil(Math.max(oldRight, frameGeometry.getRight())) + stroke;
+        invalidate(imageBounds.left - stroke, top, right, imageBounds.top + stroke);
+        invalidate(imageBounds.right - stroke, imageBounds.top, right, imageBounds.bottom + stroke);
     }
 
     public void setMaxFrameCount(int maxCount){
@@ -163,44 +426,204 @@ public class StackedImageView extends ViewGroup {
         recalculateFrames(frameCount);
     }
 
+    public void setFramePadding(float framePadding){
+        if(this.framePadding != framePadding){
+            this.framePadding = framePadding;
+            recalculateFrames(frameCount);
+            requestLayout();
+        }
+    }
+
 
     @Override
     protected void onDraw(Canvas canvas) {
-        drawFrames(canvas); // we need to draw the frames before we draw the child views
+        final long start = StackedMetrics.ENABLED ? StackedMetrics.begin(StackedMetrics.STACKED_IMAGE_VIEW, StackedMetrics.DRAW) : 0;
+        final int layerCalls = drawLayerImages(canvas);
+        final int frameCalls = drawFrames(canvas); // we need to draw the frames before we draw the child views
+        final int imageCalls = drawImage(canvas);
         super.onDraw(canvas);
+        StackedQualityGovernor.onStackDrawn();
+        if (StackedMetrics.ENABLED) {
+            StackedMetrics.countDraw(StackedMetrics.STACKED_IMAGE_VIEW, layerCalls + frameCalls + imageCalls, frameCount);
+            StackedMetrics.end(StackedMetrics.STACKED_IMAGE_VIEW, StackedMetrics.DRAW, start);
+        }
     }
 
+    /**
+     * Draws the visible sliver of every layer image, back to front.
+     *
+     * @return number of bitmaps drawn
+     */
+    private int drawLayerImages(Canvas canvas){
+        if(layerStrips == null){
+            return 0;
+        }
+        int drawn = 0;
+        final int layers = Math.min(layerSources.length, drawnFrameCount() - 1);
+        for(int i = layers - 1; i >= 0; i--){
+            final float offset = (i + 1) * frameOffset;
+            final Bitmap top = layerStrips[2 * i];
+            if(top != null){
+                layerRect.set(imageBounds.left + offset, imageBounds.top - offset,
+                        imageBounds.right + offset, imageBounds.top - offset + frameOffset);
+                canvas.drawBitmap(top, null, layerRect, layerPaint);
+                drawn++;
+            }
+            final Bitmap right = layerStrips[2 * i + 1];
+            if(right != null){
+                layerRect.set(imageBounds.right + offset - frameOffset, imageBounds.top - offset + frameOffset,
+                        imageBounds.right + offset, imageBounds.bottom - offset);
+                canvas.drawBitmap(right, null, layerRect, layerPaint);
+                drawn++;
+            }
+        }
+        return drawn;
+    }
 
-    private void drawFrames(Canvas canvas){
-        canvas.drawRect(imageBounds, borderPaint);
-        frameBounds.set(imageBounds); //initial frame is around the iamge
-        for(int i=1;i<frameCount;i++){
-            frameBounds.offset(frameDelta, - frameDelta); //offset the frame by 1
-            verticalLong[0] = frameBounds.right;
-            verticalLong[1] = frameBounds.top;
-            verticalLong[2] = frameBounds.right;
-            verticalLong[3] = frameBounds.bottom;
+    /**
+     * Draws the image and the placeholder fading out on top of it.
+     *
+     * @return number of draw calls
+     */
+    private int drawImage(Canvas canvas){
+        int drawn = 0;
+        if(drawable != null){
+            final int saveCount = canvas.save();
+            canvas.clipRect(imageBounds);
+            canvas.translate(imageBounds.left, imageBounds.top);
+            if(hasDrawMatrix){
+                canvas.concat(drawMatrix);
+            }
+            drawable.draw(canvas);
+            canvas.restoreToCount(saveCount);
+            drawn++;
+        }
+        if(placeholderVisible && drawPlaceholder(canvas)){
+            drawn++;
+        }
+        return drawn;
+    }
 
-            verticalShort[0] = frameBounds.left;
-            verticalShort[1] = frameBounds.top;
-            verticalShort[2] = frameBounds.left;
-            verticalShort[3] = frameBounds.top+frameDelta;
+    private boolean drawPlaceholder(Canvas canvas){
+        if(placeholderFadeStart >= 0){
+            final long elapsed = AnimationUtils.currentAnimationTimeMillis() - placeholderFadeStart;
+            if(elapsed >= PLACEHOLDER_FADE_DURATION){
+                placeholderVisible = false;
+                placeholderFadeStart = -1;
+                return false;
+            }
+            placeholderPaint.setAlpha((int) (255 * (PLACEHOLDER_FADE_DURATION - elapsed) / PLACEHOLDER_FADE_DURATION));
+            ViewCompat.postInvalidateOnAnimation(this, imageBounds.left, imageBounds.top, imageBounds.right, imageBounds.bottom);
+        }
+        canvas.drawBitmap(placeholderBitmap, null, imageBounds, placeholderPaint);
+        placeholderDrawn = true;
+        return true;
+    }
 
-            horizontalLong[0] = frameBounds.left;
-            horizontalLong[1] = frameBounds.top;
-            horizontalLong[2] = frameBounds.right;
-            horizontalLong[3] = frameBounds.top;
 
-            horizontalShort[0] = frameBounds.right-frameDelta;
-            horizontalShort[1] = frameBounds.bottom;
-            horizontalShort[2] = frameBounds.right;
-            horizontalShort[3] = frameBounds.bottom;
+    /**
+     * @return number of canvas calls made
+     */
+    private int drawFrames(Canvas canvas){
+        if(frameGeometry.hasBand()){
+            // layers closer than a pixel, two calls however many there are
+            frameBand.draw(canvas);
+            canvas.drawLines(frameGeometry.getLines(), 0, frameGeometry.getLineCount(), borderPaint);
+            return 2;
+        }
+        final int styledCalls = styledFrames != null ? styledFrames.draw(canvas) : 0;
+        if(styledCalls > 0){
+            return styledCalls;
+        }
+        // the animator rebuilds the frames on every step, caching them would rasterize every step
+        if(frameCache != null && !frameAnimator.isRunning()){
+            if(cachedFrames == null){
+                cachedFrames = frameCache.obtain(imageBounds, drawnFrameCount(), frameOffset, frameGeometry, borderPaint);
+            }
+            if(cachedFrames != null){
+                return cachedFrames.draw(canvas, imageBounds, borderPaint);
+            }
+        }
+        canvas.drawLines(frameGeometry.getLines(), 0, frameGeometry.getLineCount(), borderPaint);
+        return 1;
+    }
 
-            canvas.drawLines(verticalLong,borderPaint);
-            canvas.drawLines(verticalShort,borderPaint);
-            canvas.drawLines(horizontalLong,borderPaint);
-            canvas.drawLines(horizontalShort,borderPaint);
+    /**
+     * Rebuilds the packed frame lines, only needed when the image bounds or the frame configuration change.
+     */
+    private void rebuildFrames(){
+        final int count = drawnFrameCount();
+        frameOffset = FrameGeometry.frameOffset(framePadding, count);
+        frameGeometry.setStack(imageBounds.left, imageBounds.top, imageBounds.right, imageBounds.bottom, count, framePadding);
+        rebuildFrameFill();
+    }
+
+    /**
+     * Applies a level of the {@link StackedQualityGovernor}, the configured frames are left untouched.
+     */
+    private void setQualityLevel(int level){
+        if(qualityLevel == level){
+            return;
         }
+        qualityLevel = level;
+        borderPaint.setAntiAlias(level < StackedQualityGovernor.LEVEL_NO_ANTI_ALIAS);
+        rebuildFrames();
+        invalidate();
+    }
+
+    /**
+     * @return the number of frames drawn, lower than the frame count while the governor reduces it
+     */
+    private int drawnFrameCount(){
+        return qualityLevel >= StackedQualityGovernor.LEVEL_REDUCED_COUNT ? QualityPolicy.reducedFrameCount(frameCount) : frameCount;
+    }
+
+    /**
+     * Follows a new frame geometry with the band or the styled mesh drawn for it.
+     */
+    private void rebuildFrameFill(){
+        cachedFrames = null;
+        if(frameGeometry.hasBand()){
+            if(frameBand == null){
+                frameBand = new FrameBand();
+            }
+            frameBand.set(frameGeometry, frameColor, styledFrames != null ? styledFrames.getEndColor() : frameColor);
+        }else if(styledFrames != null){
+            styledFrames.rebuild(frameGeometry, strokeWith);
+        }
+    }
+
+    /**
+     * Gives every layer its own color, blending from the frame color around the image to {@code endColor}
+     * at the back of the stack, with an optional shadow underneath. Software canvases and API 29+ draw
+     * them with a single call, older hardware canvases with one call per layer. Styled frames bypass the {@link #setFrameCache(StackedFrameCache) frame
+     * cache}. Layers less than a pixel apart are drawn as one band blending to {@code endColor}, without
+     * the shadow.
+     *
+     * @param alphaCurve   how the alpha moves towards the end color, one of {@link FrameVertices#CURVE_LINEAR},
+     *                     {@link FrameVertices#CURVE_ACCELERATE} or {@link FrameVertices#CURVE_DECELERATE}
+     * @param shadowOffset offset of the shadow down and to the right, 0 for none
+     */
+    public void setFrameStyle(int endColor, int alphaCurve, float shadowOffset, int shadowColor){
+        if(styledFrames == null){
+            styledFrames = new StyledFrames();
+        }
+        styledFrames.setStyle(frameColor, endColor, alphaCurve, shadowOffset, shadowColor);
+        if(!styledFrames.isStyled()){
+            styledFrames = null;
+        }
+        rebuildFrameFill();
+        invalidate();
+    }
+
+    /**
+     * Shares the rasterized frames with every other view using the same cache, image size and frame
+     * configuration, so they are drawn with a single bitmap blit. Pass null to draw the frames directly again.
+     */
+    public void setFrameCache(StackedFrameCache frameCache){
+        this.frameCache = frameCache;
+        cachedFrames = null;
+        invalidate();
     }
 
     @Override
@@ -209,11 +632,26 @@ public class StackedImageView extends ViewGroup {
 
     }
 
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        if (!StackedMetrics.ENABLED) {
+            layoutStack(changed, left, top, right, bottom);
+            return;
+        }
+        final long start = StackedMetrics.begin(StackedMetrics.STACKED_IMAGE_VIEW, StackedMetrics.LAYOUT);
+        layoutStack(changed, left, top, right, bottom);
+        StackedMetrics.end(StackedMetrics.STACKED_IMAGE_VIEW, StackedMetrics.LAYOUT, start);
+    }
+
     /**
      * Position all children within this layout.
      */
-    @Override
-    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+    private void layoutStack(boolean changed, int left, int top, int right, int bottom) {
+        if (!changed && !layoutDirty && !isChildLayoutRequested()) {
+            // same size, same measurements: imageBounds and the frames are still valid
+            return;
+        }
+        layoutDirty = false;
         final int count = getChildCount();
         // These are the far left and right edges in which we are performing layout.
         int leftPos = getPaddingLeft();
@@ -223,28 +661,32 @@ public class StackedImageView extends ViewGroup {
         final int parentTop = getPaddingTop();
         final int parentBottom = bottom - top - getPaddingBottom();
 
+        if (imageView == null) {
+            stackMeasure.layoutChild(leftPos, parentTop, rightPos, parentBottom, 0, 0, 0, 0,
+                    contentWidth, contentHeight, framePadding);
+            imageBounds.set(stackMeasure.getLeft(), stackMeasure.getTop(), stackMeasure.getRight(), stackMeasure.getBottom());
+            configureDrawable();
+        }
+
         for (int i = 0; i < count; i++) {
             final View child = getChildAt(i);
             if (child.getVisibility() != GONE) {
                 final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
-
-                final int width = (int) (child.getMeasuredWidth() - (2*framePadding));
-                final int height = (int) (child.getMeasuredHeight() - (2* framePadding));
-
-                // Compute the frame in which we are placing this child.
-                imageBounds.left = (int) (leftPos + lp.leftMargin + framePadding);
-                imageBounds.right = (int) (rightPos - lp.rightMargin - framePadding);
-                imageBounds.top = (int) (parentTop + lp.topMargin + framePadding);
-                imageBounds.bottom = (int) (parentBottom - lp.bottomMargin - framePadding);
-
-                // Use the child's gravity and size to determine its final
-                // frame within its container.
-                Gravity.apply(Gravity.CENTER, width, height, imageBounds, imageBounds);
+                // center the child within the frame padding
+                stackMeasure.layoutChild(leftPos, parentTop, rightPos, parentBottom,
+                        lp.leftMargin, lp.topMargin, lp.rightMargin, lp.bottomMargin,
+                        child.getMeasuredWidth(), child.getMeasuredHeight(), framePadding);
+                imageBounds.set(stackMeasure.getLeft(), stackMeasure.getTop(), stackMeasure.getRight(), stackMeasure.getBottom());
                 // Place the child.
                 child.layout(imageBounds.left, imageBounds.top,
                         imageBounds.right, imageBounds.bottom);
             }
         }
+        if (imageSource != null && imageRequest == null && getDrawable() == null && !imageBounds.isEmpty()) {
+            loadImageSource();
+        }
+        rebuildFrames();
+        loadLayerImages();
     }
 
     @Override
@@ -268,17 +710,390 @@ public class StackedImageView extends ViewGroup {
     }
 
     public void setScaleType(ScaleType scaleType) {
-        imageView.setScaleType(scaleType);
+        if (imageView != null) {
+            imageView.setScaleType(scaleType);
+            return;
+        }
+        if (this.scaleType != scaleType) {
+            this.scaleType = scaleType;
+            configureDrawable();
+            invalidate();
+        }
     }
 
     public void setImageDrawable(Drawable imageDrawable) {
-        imageView.setImageDrawable(imageDrawable);
+        cancelImageRequest();
+        imageSource = null;
+        applyImageDrawable(imageDrawable);
+    }
+
+    /**
+     * Shows a pre-rendered thumbnail of an atlas, drawn from the shared page bitmap once its page is loaded.
+     */
+    public void setImageAtlas(StackAtlasPages atlas, String id) {
+        setImageDrawable(atlas.getDrawable(id));
+    }
+
+    /**
+     * Decodes the file on a background thread, downsampled to the size of the image area.
+     */
+    public void setImageFile(File file) {
+        setImageSource(ImageSource.fromFile(file));
+    }
+
+    public void setImageUri(Uri uri) {
+        setImageSource(ImageSource.fromUri(uri));
+    }
+
+    public void setImageBytes(byte[] bytes) {
+        setImageSource(ImageSource.fromBytes(bytes));
+    }
+
+    /**
+     * The stream is read and closed on the loader thread.
+     */
+    public void setImageStream(InputStream stream) {
+        setImageSource(ImageSource.fromStream(stream));
+    }
+
+    /**
+     * Shows a placeholder made by {@link StackPlaceholder#encode} in the image area until an image is set,
+     * the image then fades in over it. Decoding takes microseconds and does not allocate once the view has
+     * shown its first placeholder, so it can be called while binding every cell. Set it before the image
+     * source, an image that is already in memory replaces the placeholder without fading. Pass null to
+     * remove the placeholder.
+     *
+     * @throws IllegalArgumentException if the data is not a placeholder
+     */
+    public void setPlaceholder(byte[] placeholder){
+        placeholderFadeStart = -1;
+        placeholderPaint.setAlpha(255);
+        if(placeholder == null){
+            placeholderVisible = false;
+        }else{
+            final int[] pixels = sPlaceholderDecoder.decode(placeholder);
+            if(placeholderBitmap == null){
+                placeholderBitmap = Bitmap.createBitmap(StackPlaceholder.SIZE, StackPlaceholder.SIZE, Bitmap.Config.ARGB_8888);
+            }
+            placeholderBitmap.setPixels(pixels, 0, StackPlaceholder.SIZE, 0, 0, StackPlaceholder.SIZE, StackPlaceholder.SIZE);
+            placeholderVisible = true;
+            placeholderDrawn = false;
+        }
+        invalidateImage();
+    }
+
+    /**
+     * Loads the image asynchronously through {@link StackedImageLoader}. Any load still in flight for a
+     * previous source is cancelled, the current image is cleared until the new one is decoded. A thumbnail
+     * read from the persistent store belongs to this view and its bitmap is refilled for the next source,
+     * don't keep the {@link #getDrawable() drawable} of one around.
+     */
+    public void setImageSource(ImageSource source) {
+        cancelImageRequest();
+        imageSource = source;
+        applyImageDrawable(null);
+        if (source != null && !imageBounds.isEmpty()) {
+            loadImageSource();
+        }
+    }
+
+    /**
+     * Shows a different image on each layer behind the main image, like a stack of photos. The first source
+     * goes directly behind the image. Each layer only shows a sliver as wide as the frame offset, so only
+     * those slivers are decoded, downsampled to their on-screen size.
+     */
+    public void setLayerImages(List<ImageSource> sources) {
+        cancelLayerRequests();
+        if (sources == null || sources.isEmpty()) {
+            layerSources = null;
+            layerStrips = null;
+            layerRequests = null;
+        } else {
+            layerSources = sources.toArray(new ImageSource[sources.size()]);
+            layerStrips = new Bitmap[2 * layerSources.length];
+            layerRequests = new StackedImageLoader.Request[layerSources.length];
+            layerStripsDelta = -1;
+            loadLayerImages();
+        }
+        invalidate();
+    }
+
+    private void loadLayerImages() {
+        // slivers are drawn frameOffset wide, decode them at the next whole pixel
+        final int sliver = (int) Math.ceil(frameOffset);
+        if (layerSources == null || imageBounds.isEmpty() || sliver <= 0 || frameAnimator.isRunning()) {
+            return;
+        }
+        final int width = imageBounds.width();
+        final int height = imageBounds.height();
+        if (layerStripsDelta == sliver && layerStripsWidth == width && layerStripsHeight == height) {
+            return;
+        }
+        cancelLayerRequests();
+        Arrays.fill(layerStrips, null);
+        layerStripsWidth = width;
+        layerStripsHeight = height;
+        layerStripsDelta = sliver;
+
+        // layers are drawn with FIT_XY, so the slivers are the same fractions of the source
+        final float deltaX = Math.min(1f, (float) sliver / width);
+        final float deltaY = Math.min(1f, (float) sliver / height);
+        final StackedImageLoader loader = StackedImageLoader.getInstance(getContext());
+        final int layers = Math.min(layerSources.length, frameMaxCount - 1);
+        // both slivers of a layer come from one decoder
+        final float[] regions = {0, 0, 1, deltaY, 1 - deltaX, deltaY, 1, 1};
+        final int[] sizes = {width, sliver, sliver, Math.max(1, height - sliver)};
+        for (int i = 0; i < layers; i++) {
+            layerRequests[i] = loader.loadRegions(layerSources[i], regions, sizes,
+                    new StackedImageLoader.Callback[]{new LayerCallback(2 * i), new LayerCallback(2 * i + 1)});
+        }
+    }
+
+    /**
+     * @return true if a layer image was still loading
+     */
+    private boolean cancelLayerRequests() {
+        boolean pending = false;
+        if (layerRequests != null) {
+            for (int i = 0; i < layerRequests.length; i++) {
+                if (layerRequests[i] != null) {
+                    layerRequests[i].cancel();
+                    layerRequests[i] = null;
+                    pending = true;
+                }
+            }
+        }
+        return pending;
+    }
+
+    private final class LayerCallback implements StackedImageLoader.Callback {
+        private final int index;
+
+        LayerCallback(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public void onImageLoaded(Bitmap bitmap) {
+            layerStrips[index] = bitmap;
+            onLayerDelivered();
+            invalidate();
+        }
+
+        @Override
+        public void onImageFailed(Exception e) {
+            onLayerDelivered();
+        }
+
+        /**
+         * Forgets the request of the layer once both of its slivers arrived.
+         */
+        private void onLayerDelivered() {
+            final StackedImageLoader.Request request = layerRequests[index / 2];
+            if (request != null && request.isFinished()) {
+                layerRequests[index / 2] = null;
+            }
+        }
+    }
+
+    private void loadImageSource() {
+        // a thumbnail only this view showed is refilled once it is off screen
+        final Bitmap reuse = ownedDrawable != null && getDrawable() != ownedDrawable ? ownedDrawable.getBitmap() : null;
+        ownedDrawable = null;
+        imageRequest = StackedImageLoader.getInstance(getContext())
+                .load(imageSource, imageBounds.width(), imageBounds.height(), reuse, imageCallback);
+    }
+
+    private void cancelImageRequest() {
+        if (imageRequest != null) {
+            imageRequest.cancel();
+            imageRequest = null;
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        setQualityLevel(StackedQualityGovernor.getInstance().register(qualityListener));
+        if (imageSource != null && imageRequest == null && getDrawable() == null && !imageBounds.isEmpty()) {
+            loadImageSource();
+        }
+        loadLayerImages();
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        frameAnimator.cancel();
+        StackedQualityGovernor.getInstance().unregister(qualityListener);
+        cancelImageRequest();
+        if (cancelLayerRequests()) {
+            layerStripsDelta = -1; // reload the missing slivers once attached again
+        }
+        super.onDetachedFromWindow();
+    }
+
+    private void applyImageDrawable(Drawable imageDrawable) {
+        if (imageView != null) {
+            imageView.setImageDrawable(imageDrawable);
+            if (imageDrawable != null) {
+                placeholderVisible = false; // the hosted view draws on top, there is nothing to fade
+            }
+            return;
+        }
+        if (drawable == imageDrawable) {
+            return;
+        }
+        final int oldWidth = getIntrinsicWidth();
+        final int oldHeight = getIntrinsicHeight();
+        if (drawable != null) {
+            drawable.setCallback(null);
+            unscheduleDrawable(drawable);
+        }
+        drawable = imageDrawable;
+        if (drawable != null) {
+            drawable.setCallback(this);
+            if (drawable.isStateful()) {
+                drawable.setState(getDrawableState());
+            }
+            drawable.setVisible(getVisibility() == VISIBLE, true);
+            if (placeholderVisible && placeholderFadeStart < 0) {
+                if (placeholderDrawn) {
+                    placeholderFadeStart = AnimationUtils.currentAnimationTimeMillis();
+                } else {
+                    placeholderVisible = false; // arrived before the placeholder was ever on screen
+                }
+            }
+        }
+        if (oldWidth != getIntrinsicWidth() || oldHeight != getIntrinsicHeight()) {
+            requestLayout();
+        }
+        configureDrawable();
+        invalidateImage();
+    }
+
+    /**
+     * Only the image area changes when the image or placeholder is swapped, the frames stay as they are.
+     */
+    private void invalidateImage() {
+        if (imageBounds.isEmpty()) {
+            invalidate();
+        } else {
+            invalidate(imageBounds);
+        }
+    }
+
+    public Drawable getDrawable() {
+        return imageView != null ? imageView.getDrawable() : drawable;
     }
 
+    /**
+     * Compatibility path for callers that need a real {@link ImageView}. The first call moves the drawable
+     * into a hosted child ImageView, which costs an extra view per instance, so only use it when the
+     * ImageView itself has to be configured.
+     */
     public ImageView getImageView() {
+        if (imageView == null) {
+            final Drawable d = drawable;
+            if (d != null) {
+                d.setCallback(null);
+                drawable = null;
+            }
+            imageView = new ImageView(getContext());
+            imageView.setLayoutParams(new LayoutParams(LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+            imageView.setScaleType(scaleType);
+            imageView.setImageDrawable(d);
+            addView(imageView);
+        }
         return imageView;
     }
 
+    @Override
+    protected boolean verifyDrawable(Drawable who) {
+        return who == drawable || super.verifyDrawable(who);
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        if (drawable != null && drawable.isStateful()) {
+            drawable.setState(getDrawableState());
+        }
+    }
+
+    @Override
+    public void jumpDrawablesToCurrentState() {
+        super.jumpDrawablesToCurrentState();
+        if (drawable != null) {
+            drawable.jumpToCurrentState();
+        }
+    }
+
+    private int getIntrinsicWidth() {
+        return drawable == null ? 0 : Math.max(0, drawable.getIntrinsicWidth());
+    }
+
+    private int getIntrinsicHeight() {
+        return drawable == null ? 0 : Math.max(0, drawable.getIntrinsicHeight());
+    }
+
+    /**
+     * Computes the drawable bounds and matrix for the current scale type, mirroring ImageView.
+     */
+    private void configureDrawable() {
+        if (drawable == null) {
+            return;
+        }
+        final int dwidth = drawable.getIntrinsicWidth();
+        final int dheight = drawable.getIntrinsicHeight();
+        final int vwidth = imageBounds.width();
+        final int vheight = imageBounds.height();
+
+        hasDrawMatrix = false;
+        if (dwidth <= 0 || dheight <= 0 || ScaleType.FIT_XY == scaleType) {
+            // fill the whole image area
+            drawable.setBounds(0, 0, vwidth, vheight);
+            return;
+        }
+        drawable.setBounds(0, 0, dwidth, dheight);
+        if (ScaleType.MATRIX == scaleType || (vwidth == dwidth && vheight == dheight)) {
+            return;
+        }
+
+        hasDrawMatrix = true;
+        if (ScaleType.CENTER == scaleType) {
+            drawMatrix.setTranslate(Math.round((vwidth - dwidth) * 0.5f), Math.round((vheight - dheight) * 0.5f));
+        } else if (ScaleType.CENTER_CROP == scaleType) {
+            final float scale;
+            float dx = 0, dy = 0;
+            if (dwidth * vheight > vwidth * dheight) {
+                scale = (float) vheight / (float) dheight;
+                dx = (vwidth - dwidth * scale) * 0.5f;
+            } else {
+                scale = (float) vwidth / (float) dwidth;
+                dy = (vheight - dheight * scale) * 0.5f;
+            }
+            drawMatrix.setScale(scale, scale);
+            drawMatrix.postTranslate(Math.round(dx), Math.round(dy));
+        } else if (ScaleType.CENTER_INSIDE == scaleType) {
+            final float scale = Math.min(1.0f, Math.min((float) vwidth / (float) dwidth, (float) vheight / (float) dheight));
+            drawMatrix.setScale(scale, scale);
+            drawMatrix.postTranslate(Math.round((vwidth - dwidth * scale) * 0.5f), Math.round((vheight - dheight * scale) * 0.5f));
+        } else {
+            tempSrc.set(0, 0, dwidth, dheight);
+            tempDst.set(0, 0, vwidth, vheight);
+            drawMatrix.setRectToRect(tempSrc, tempDst, scaleToFit(scaleType));
+        }
+    }
+
+    private static Matrix.ScaleToFit scaleToFit(ScaleType scaleType) {
+        if (ScaleType.FIT_START == scaleType) {
+            return Matrix.ScaleToFit.START;
+        } else if (ScaleType.FIT_END == scaleType) {
+            return Matrix.ScaleToFit.END;
+        }
+        return Matrix.ScaleToFit.CENTER;
+    }
+
     /**
      * Custom per-child layout information.
      */
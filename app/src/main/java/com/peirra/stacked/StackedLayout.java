@@ -1,16 +1,21 @@
 package com.peirra.stacked;
 
 import android.content.Context;
-import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.graphics.Region;
+import android.os.Build;
 import android.util.AttributeSet;
-import android.view.Gravity;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.animation.Interpolator;
 
+/**
+ * Draws a stack of frames behind its children. All children share the image bounds, unless deck mode is
+ * {@link #setDeckMode(boolean) enabled}.
+ */
 public class StackedLayout extends ViewGroup {
 
     String TAG = StackedLayout.class.getSimpleName();
@@ -19,19 +24,49 @@ public class StackedLayout extends ViewGroup {
     private float framePadding = 0;
 
     private  Rect viewBounds = new Rect();
-    private final Rect frameBounds = new Rect();
     private final Rect imageBounds = new Rect();
     private final Paint borderPaint = new Paint();
 
     private int MAX_FRAME_COUNT = 10;
     private int MAX_STROKE_WIDTH = 2;
     private int frameCount = MAX_FRAME_COUNT;
-    private int frameDelta = 1;
+    private float frameOffset = 1;
     private int strokeWith = MAX_STROKE_WIDTH;
-    private final float[] verticalLong = new float[4];
-    private final float[] verticalShort = new float[4];
-    private final float[] horizontalLong = new float[4];
-    private final float[] horizontalShort = new float[4];
+    private final FrameGeometry frameGeometry = new FrameGeometry();
+    private final MeasureCache measureCache = new MeasureCache(10);
+    private final StackMeasure stackMeasure = new StackMeasure();
+    private boolean layoutDirty = true;
+    private StackedFrameCache frameCache;
+    private StackedFrameCache.Frames cachedFrames;
+    private StyledFrames styledFrames;
+    private FrameBand frameBand;
+    private int qualityLevel = StackedQualityGovernor.LEVEL_FULL;
+    // clipping to a sliver is not supported by hardware canvases before API 18
+    private static final boolean HARDWARE_DIFFERENCE_CLIP = Build.VERSION.SDK_INT >= 18;
+    private boolean deckMode;
+    private final Rect childBounds = new Rect();
+    private final StackedQualityGovernor.Listener qualityListener = new StackedQualityGovernor.Listener() {
+        @Override
+        public void onQualityChanged(int oldLevel, int newLevel) {
+            setQualityLevel(newLevel);
+        }
+    };
+    private final FrameCountAnimator frameAnimator = new FrameCountAnimator(this, new FrameCountAnimator.Host() {
+        @Override
+        public void onAnimatedFrameCount(int count) {
+            if (count != frameCount) {
+                final float oldTop = frameGeometry.getTop();
+                final float oldRight = frameGeometry.getRight();
+                final int oldStroke = strokeWith;
+                computeFrames(count);
+                invalidateFrameBand(oldTop, oldRight, oldStroke);
+            }
+        }
+
+        @Override
+        public void onFrameCountAnimationEnd() {
+        }
+    });
 
     public StackedLayout(Context context) {
         super(context);
@@ -48,23 +83,42 @@ public class StackedLayout extends ViewGroup {
         init(attrs, defStyle);
     }
 
+    private StackedLayout(Context context, Builder builder) {
+        super(context);
+        frameColor = builder.frameColor;
+        framePadding = builder.framePadding;
+        deckMode = builder.deckMode;
+        initFrames(Math.min(builder.frameCount, builder.frameMaxCount),
+                builder.styled ? builder.frameEndColor : frameColor, builder.frameAlphaCurve,
+                builder.frameShadowOffset, builder.frameShadowColor);
+    }
+
     private void init(AttributeSet attrs, int defStyle) {
-        final TypedArray a = getContext().obtainStyledAttributes(attrs, R.styleable.StackedLayout, defStyle, 0);
+        final CachedAttributes a = CachedAttributes.obtain(getContext(), attrs, R.styleable.StackedLayout, defStyle, 0);
         frameColor = a.getColor(R.styleable.StackedLayout_frameColor, frameColor);
         framePadding = a.getDimension(R.styleable.StackedLayout_framePadding, framePadding);
         frameCount = a.getInt(R.styleable.StackedLayout_frameCount, MAX_FRAME_COUNT);
         int frameMaxCount = a.getInt(R.styleable.StackedLayout_frameMaxCount, MAX_FRAME_COUNT);
+        final int frameEndColor = a.getColor(R.styleable.StackedLayout_frameEndColor, frameColor);
+        final int frameAlphaCurve = a.getInt(R.styleable.StackedLayout_frameAlphaCurve, FrameVertices.CURVE_LINEAR);
+        final float frameShadowOffset = a.getDimension(R.styleable.StackedLayout_frameShadowOffset, 0);
+        final int frameShadowColor = a.getColor(R.styleable.StackedLayout_frameShadowColor, Color.TRANSPARENT);
+        deckMode = a.getBoolean(R.styleable.StackedLayout_deckMode, false);
         if(frameCount > frameMaxCount){
             frameCount = frameMaxCount;
         }
-        a.recycle();
+        initFrames(frameCount, frameEndColor, frameAlphaCurve, frameShadowOffset, frameShadowColor);
+    }
+
+    private void initFrames(int frameCount, int frameEndColor, int frameAlphaCurve, float frameShadowOffset,
+                            int frameShadowColor) {
         borderPaint.setAntiAlias(true);
         borderPaint.setColor(frameColor);
         borderPaint.setStyle(Paint.Style.STROKE);
         borderPaint.setStrokeWidth(strokeWith);
         borderPaint.setStrokeCap(Paint.Cap.SQUARE);
+        setFrameStyle(frameEndColor, frameAlphaCurve, frameShadowOffset, frameShadowColor);
         setFrameCount(frameCount);
-
     }
 
     /**
@@ -78,7 +132,22 @@ public class StackedLayout extends ViewGroup {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        if (!StackedMetrics.ENABLED) {
+            measureStack(widthMeasureSpec, heightMeasureSpec);
+            return;
+        }
+        final long start = StackedMetrics.begin(StackedMetrics.STACKED_LAYOUT, StackedMetrics.MEASURE);
+        measureStack(widthMeasureSpec, heightMeasureSpec);
+        StackedMetrics.end(StackedMetrics.STACKED_LAYOUT, StackedMetrics.MEASURE, start);
+    }
+
+    private void measureStack(int widthMeasureSpec, int heightMeasureSpec) {
         int count = getChildCount();
+        if (isMeasureCached(widthMeasureSpec, heightMeasureSpec, count)) {
+            setMeasuredDimension(measureCache.getWidthAndState(), measureCache.getHeightAndState());
+            return;
+        }
+        layoutDirty = true;
         int height = 0;
         int width = 0;
         int childState = 0;
@@ -94,75 +163,340 @@ public class StackedLayout extends ViewGroup {
             }
         }
         // Check against our minimum height and width
-        height = (int) (Math.max(height, getSuggestedMinimumHeight()) - (2 * framePadding));
-        width  = (int) (Math.max(width, getSuggestedMinimumWidth()) - (2 * framePadding));
+        height = StackMeasure.measuredSize(height, getSuggestedMinimumHeight(), framePadding);
+        width = StackMeasure.measuredSize(width, getSuggestedMinimumWidth(), framePadding);
         // Report our final dimensions.
         setMeasuredDimension(resolveSizeAndState(width, widthMeasureSpec, childState),
                 resolveSizeAndState(height, heightMeasureSpec,childState << MEASURED_HEIGHT_STATE_SHIFT));
         viewBounds.set(strokeWith, strokeWith, getMeasuredWidth() - getPaddingRight(), getMeasuredHeight() - getPaddingTop());
+        measureCache.store(getMeasuredWidthAndState(), getMeasuredHeightAndState());
+    }
+
+    /**
+     * @return true if nothing that feeds into onMeasure changed since the last pass, the same children are
+     * shown and none of them asked for a new layout, in which case the last result can be reused as is
+     */
+    private boolean isMeasureCached(int widthMeasureSpec, int heightMeasureSpec, int count) {
+        measureCache.begin();
+        measureCache.key(widthMeasureSpec);
+        measureCache.key(heightMeasureSpec);
+        measureCache.key(framePadding);
+        measureCache.key(count);
+        measureCache.key(getPaddingLeft());
+        measureCache.key(getPaddingTop());
+        measureCache.key(getPaddingRight());
+        measureCache.key(getPaddingBottom());
+        measureCache.key(getSuggestedMinimumWidth());
+        measureCache.key(getSuggestedMinimumHeight());
+        for (int i = 0; i < count; i++) {
+            final View child = getChildAt(i);
+            measureCache.child(child, child.getVisibility());
+        }
+        return measureCache.isHit() && !isChildLayoutRequested();
+    }
 
+    /**
+     * @return true if any child asked for a new layout, whatever its visibility
+     */
+    private boolean isChildLayoutRequested() {
+        final int count = getChildCount();
+        for (int i = 0; i < count; i++) {
+            if (getChildAt(i).isLayoutRequested()) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
     public void setFrameCount(int frameCount) {
+        frameAnimator.cancel();
+        final float oldTop = frameGeometry.getTop();
+        final float oldRight = frameGeometry.getRight();
+        final int oldStroke = strokeWith;
+        computeFrames(frameCount);
+        invalidateFrameBand(oldTop, oldRight, oldStroke);
+    }
+
+    /**
+     * Animates the stack from its current frame count to the new one. Only the frame band is redrawn on
+     * every step and the view runs on a hardware layer until the animation ends.
+     *
+     * @param interpolator null for linear
+     */
+    public void setFrameCount(int frameCount, long duration, Interpolator interpolator) {
+        frameAnimator.start(this.frameCount, frameCount, duration, interpolator);
+    }
+
+    private void computeFrames(int frameCount){
         this.frameCount = frameCount;
-        strokeWith = Math.min(MAX_STROKE_WIDTH,(int) Math.floor(framePadding / frameCount) / 2);
+        strokeWith = FrameGeometry.strokeWidth(framePadding, frameCount, MAX_STROKE_WIDTH);
         borderPaint.setStrokeWidth(strokeWith);
-        frameDelta = (int) Math.floor(framePadding / (float) frameCount);
-        invalidate();
+        rebuildFrames();
+        if(deckMode){
+            // the children move with the frames
+            layoutDirty = true;
+            requestLayout();
+        }
+    }
+
+    /**
+     * Invalidates the band between the image and the outer frame, covering both the frames that were drawn
+     * before the change and the ones drawn after it. The image area itself is left alone, unless the stroke
+     * width changed and the whole view is redrawn.
+     *
+     * @param oldTop   top of the outer frame before the change
+     * @param oldRight right edge of the outer frame before the change
+     * @param oldStroke stroke width before the change
+     */
+    private void invalidateFrameBand(float oldTop, float oldRight, int oldStroke){
+        if(imageBounds.isEmpty() || oldStroke != strokeWith){
+            // a new stroke also changes the left and bottom edges of the frame around the image
+            invalidate();
+            return;
+        }
+        final int stroke = MAX_STROKE_WIDTH + (styledFrames != null ? (int) Math.ceil(styledFrames.getShadowOffset()) : 0);
+        final int top = (int) Math.floor(Math.min(oldTop, frameGeometry.getTop())) - stroke;
+        final int right = (int) Math.ceil(Math.max(oldRight, frameGeometry.getRight())) + stroke;
+        invalidate(imageBounds.left - stroke, top, right, imageBounds.top + stroke);
+        invalidate(imageBounds.right - stroke, imageBounds.top, right, imageBounds.bottom + stroke);
+    }
+
+    public void setFramePadding(float framePadding){
+        if(this.framePadding != framePadding){
+            this.framePadding = framePadding;
+            setFrameCount(frameCount);
+            requestLayout();
+        }
     }
 
 
     @Override
     protected void onDraw(Canvas canvas) {
-        drawFrames(canvas); // we need to draw the frames before we draw the child views
+        final long start = StackedMetrics.ENABLED ? StackedMetrics.begin(StackedMetrics.STACKED_LAYOUT, StackedMetrics.DRAW) : 0;
+        final int frameCalls = drawFrames(canvas); // we need to draw the frames before we draw the child views
         super.onDraw(canvas);
+        StackedQualityGovernor.onStackDrawn();
+        if (StackedMetrics.ENABLED) {
+            StackedMetrics.countDraw(StackedMetrics.STACKED_LAYOUT, frameCalls, frameCount);
+            StackedMetrics.end(StackedMetrics.STACKED_LAYOUT, StackedMetrics.DRAW, start);
+        }
+    }
+
+
+    /**
+     * @return number of canvas calls made
+     */
+    private int drawFrames(Canvas canvas){
+        if(frameGeometry.hasBand()){
+            // layers closer than a pixel, two calls however many there are
+            frameBand.draw(canvas);
+            canvas.drawLines(frameGeometry.getLines(), 0, frameGeometry.getLineCount(), borderPaint);
+            return 2;
+        }
+        final int styledCalls = styledFrames != null ? styledFrames.draw(canvas) : 0;
+        if(styledCalls > 0){
+            return styledCalls;
+        }
+        // the animator rebuilds the frames on every step, caching them would rasterize every step
+        if(frameCache != null && !frameAnimator.isRunning()){
+            if(cachedFrames == null){
+                cachedFrames = frameCache.obtain(imageBounds, drawnFrameCount(), frameOffset, frameGeometry, borderPaint);
+            }
+            if(cachedFrames != null){
+                return cachedFrames.draw(canvas, imageBounds, borderPaint);
+            }
+        }
+        canvas.drawLines(frameGeometry.getLines(), 0, frameGeometry.getLineCount(), borderPaint);
+        return 1;
+    }
+
+    /**
+     * Rebuilds the packed frame lines, only needed when the image bounds or the frame configuration change.
+     */
+    private void rebuildFrames(){
+        final int count = drawnFrameCount();
+        frameOffset = FrameGeometry.frameOffset(framePadding, count);
+        frameGeometry.setStack(imageBounds.left, imageBounds.top, imageBounds.right, imageBounds.bottom, count, framePadding);
+        rebuildFrameFill();
+    }
+
+    /**
+     * Applies a level of the {@link StackedQualityGovernor}, the configured frames are left untouched.
+     */
+    private void setQualityLevel(int level){
+        if(qualityLevel == level){
+            return;
+        }
+        qualityLevel = level;
+        borderPaint.setAntiAlias(level < StackedQualityGovernor.LEVEL_NO_ANTI_ALIAS);
+        rebuildFrames();
+        if(deckMode){
+            // the reduced count moves the children with the frames
+            layoutDirty = true;
+            requestLayout();
+        }
+        invalidate();
+    }
+
+    /**
+     * @return the number of frames drawn, lower than the frame count while the governor reduces it
+     */
+    private int drawnFrameCount(){
+        return qualityLevel >= StackedQualityGovernor.LEVEL_REDUCED_COUNT ? QualityPolicy.reducedFrameCount(frameCount) : frameCount;
     }
 
+    /**
+     * Follows a new frame geometry with the band or the styled mesh drawn for it.
+     */
+    private void rebuildFrameFill(){
+        cachedFrames = null;
+        if(frameGeometry.hasBand()){
+            if(frameBand == null){
+                frameBand = new FrameBand();
+            }
+            frameBand.set(frameGeometry, frameColor, styledFrames != null ? styledFrames.getEndColor() : frameColor);
+        }else if(styledFrames != null){
+            styledFrames.rebuild(frameGeometry, strokeWith);
+        }
+    }
 
-    private void drawFrames(Canvas canvas){
-        canvas.drawRect(imageBounds, borderPaint);
-        frameBounds.set(imageBounds); //initial frame is around the iamge
-        for(int i=1;i<frameCount;i++){
-            frameBounds.offset(frameDelta, - frameDelta); //offset the frame by 1
-            verticalLong[0] = frameBounds.right;
-            verticalLong[1] = frameBounds.top;
-            verticalLong[2] = frameBounds.right;
-            verticalLong[3] = frameBounds.bottom;
+    /**
+     * Gives every layer its own color, blending from the frame color around the image to {@code endColor}
+     * at the back of the stack, with an optional shadow underneath. Software canvases and API 29+ draw
+     * them with a single call, older hardware canvases with one call per layer. Styled frames bypass the {@link #setFrameCache(StackedFrameCache) frame
+     * cache}. Layers less than a pixel apart are drawn as one band blending to {@code endColor}, without
+     * the shadow.
+     *
+     * @param alphaCurve   how the alpha moves towards the end color, one of {@link FrameVertices#CURVE_LINEAR},
+     *                     {@link FrameVertices#CURVE_ACCELERATE} or {@link FrameVertices#CURVE_DECELERATE}
+     * @param shadowOffset offset of the shadow down and to the right, 0 for none
+     */
+    public void setFrameStyle(int endColor, int alphaCurve, float shadowOffset, int shadowColor){
+        if(styledFrames == null){
+            styledFrames = new StyledFrames();
+        }
+        styledFrames.setStyle(frameColor, endColor, alphaCurve, shadowOffset, shadowColor);
+        if(!styledFrames.isStyled()){
+            styledFrames = null;
+        }
+        rebuildFrameFill();
+        invalidate();
+    }
 
-            verticalShort[0] = frameBounds.left;
-            verticalShort[1] = frameBounds.top;
-            verticalShort[2] = frameBounds.left;
-            verticalShort[3] = frameBounds.top+frameDelta;
+    /**
+     * Shares the rasterized frames with every other view using the same cache, image size and frame
+     * configuration, so they are drawn with a single bitmap blit. Pass null to draw the frames directly again.
+     */
+    public void setFrameCache(StackedFrameCache frameCache){
+        this.frameCache = frameCache;
+        cachedFrames = null;
+        invalidate();
+    }
 
-            horizontalLong[0] = frameBounds.left;
-            horizontalLong[1] = frameBounds.top;
-            horizontalLong[2] = frameBounds.right;
-            horizontalLong[3] = frameBounds.top;
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        setQualityLevel(StackedQualityGovernor.getInstance().register(qualityListener));
+    }
 
-            horizontalShort[0] = frameBounds.right-frameDelta;
-            horizontalShort[1] = frameBounds.bottom;
-            horizontalShort[2] = frameBounds.right;
-            horizontalShort[3] = frameBounds.bottom;
+    @Override
+    protected void onDetachedFromWindow() {
+        frameAnimator.cancel();
+        StackedQualityGovernor.getInstance().unregister(qualityListener);
+        super.onDetachedFromWindow();
+    }
 
-            canvas.drawLines(verticalLong,borderPaint);
-            canvas.drawLines(verticalShort,borderPaint);
-            canvas.drawLines(horizontalLong,borderPaint);
-            canvas.drawLines(horizontalShort,borderPaint);
+    /**
+     * In deck mode every child becomes a layer of the stack: the last child sits on the image bounds and
+     * every child before it is offset one frame further up and to the right. A child hidden behind an
+     * opaque child in front of it is not drawn at all, one that sticks out is clipped to the sliver that
+     * shows, so stacking many children costs about one layer of overdraw. Hardware canvases before API 18
+     * cannot clip to the sliver, partly covered children are drawn whole there.
+     */
+    public void setDeckMode(boolean deckMode){
+        if(this.deckMode != deckMode){
+            this.deckMode = deckMode;
+            layoutDirty = true;
+            requestLayout();
+            invalidate();
         }
     }
 
+    public boolean isDeckMode(){
+        return deckMode;
+    }
+
     @Override
     protected void dispatchDraw(Canvas canvas) {
+        if(deckMode){
+            findOccluders();
+        }
         super.dispatchDraw(canvas);
 
     }
 
     /**
-     * Position all children within this layout.
+     * Remembers for every child the nearest child in front of it that hides whatever it overlaps.
      */
+    private void findOccluders(){
+        View occluder = null;
+        for(int i = getChildCount() - 1; i >= 0; i--){
+            final View child = getChildAt(i);
+            ((LayoutParams) child.getLayoutParams()).occluder = occluder;
+            if(child.getVisibility() == VISIBLE && child.isOpaque() && child.getAlpha() == 1f
+                    && child.getAnimation() == null && child.getMatrix().isIdentity()){
+                occluder = child;
+            }
+        }
+    }
+
+    @Override
+    protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
+        if(!deckMode){
+            return super.drawChild(canvas, child, drawingTime);
+        }
+        final View front = ((LayoutParams) child.getLayoutParams()).occluder;
+        if(front == null){
+            return super.drawChild(canvas, child, drawingTime);
+        }
+        final int cull = DeckGeometry.cull(front.getLeft(), front.getTop(), front.getRight(), front.getBottom(),
+                child.getLeft(), child.getTop(), child.getRight(), child.getBottom(),
+                HARDWARE_DIFFERENCE_CLIP || !canvas.isHardwareAccelerated());
+        if(cull == DeckGeometry.SKIP){
+            return false;
+        }
+        if(cull == DeckGeometry.DRAW){
+            return super.drawChild(canvas, child, drawingTime);
+        }
+        // only the sliver above and to the right of the child in front is left
+        final int saveCount = canvas.save();
+        canvas.clipRect(front.getLeft(), front.getTop(), front.getRight(), front.getBottom(), Region.Op.DIFFERENCE);
+        final boolean more = super.drawChild(canvas, child, drawingTime);
+        canvas.restoreToCount(saveCount);
+        return more;
+    }
+
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        if (!StackedMetrics.ENABLED) {
+            layoutStack(changed, left, top, right, bottom);
+            return;
+        }
+        final long start = StackedMetrics.begin(StackedMetrics.STACKED_LAYOUT, StackedMetrics.LAYOUT);
+        layoutStack(changed, left, top, right, bottom);
+        StackedMetrics.end(StackedMetrics.STACKED_LAYOUT, StackedMetrics.LAYOUT, start);
+    }
+
+    /**
+     * Position all children within this layout.
+     */
+    private void layoutStack(boolean changed, int left, int top, int right, int bottom) {
+        if (!changed && !layoutDirty && !isChildLayoutRequested()) {
+            // same size, same measurements: imageBounds and the frames are still valid
+            return;
+        }
+        layoutDirty = false;
         final int count = getChildCount();
         // These are the far left and right edges in which we are performing layout.
         int leftPos = getPaddingLeft();
@@ -172,30 +506,29 @@ public class StackedLayout extends ViewGroup {
         final int parentTop = getPaddingTop();
         final int parentBottom = bottom - top - getPaddingBottom();
 
-        for (int i = 0; i < count; i++) {
+        // in deck mode the last child is in front, every child behind it is one frame further back
+        final int deckCount = deckMode ? drawnFrameCount() : 0;
+        int depth = 0;
+        for (int i = count - 1; i >= 0; i--) {
             final View child = getChildAt(i);
             if (child.getVisibility() != GONE) {
                 final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
-
-                final int width = (int) (child.getMeasuredWidth() - (2*framePadding));
-                final int height = (int) (child.getMeasuredHeight() - (2* framePadding));
-
-                // Compute the frame in which we are placing this child.
-
-
-                imageBounds.left = (int) (leftPos + lp.leftMargin + framePadding);
-                imageBounds.right = (int) (rightPos - lp.rightMargin - framePadding);
-                imageBounds.top = (int) (parentTop + lp.topMargin + framePadding);
-                imageBounds.bottom = (int) (parentBottom - lp.bottomMargin - framePadding);
-
-                // Use the child's gravity and size to determine its final
-                // frame within its container.
-                Gravity.apply(Gravity.CENTER, width, height, imageBounds, imageBounds);
+                // center the child within the frame padding
+                stackMeasure.layoutChild(leftPos, parentTop, rightPos, parentBottom,
+                        lp.leftMargin, lp.topMargin, lp.rightMargin, lp.bottomMargin,
+                        child.getMeasuredWidth(), child.getMeasuredHeight(), framePadding);
+                childBounds.set(stackMeasure.getLeft(), stackMeasure.getTop(), stackMeasure.getRight(), stackMeasure.getBottom());
+                if (depth == 0) {
+                    imageBounds.set(childBounds);
+                }
+                final int offset = DeckGeometry.offset(depth, deckCount, frameOffset);
                 // Place the child.
-                child.layout(imageBounds.left, imageBounds.top,
-                        imageBounds.right, imageBounds.bottom);
+                child.layout(childBounds.left + offset, childBounds.top - offset,
+                        childBounds.right + offset, childBounds.bottom - offset);
+                depth++;
             }
         }
+        rebuildFrames();
     }
 
     @Override
@@ -222,6 +555,8 @@ public class StackedLayout extends ViewGroup {
      * Custom per-child layout information.
      */
     public static class LayoutParams extends MarginLayoutParams {
+        View occluder; // nearest opaque child in front in deck mode, found on every draw
+
         public LayoutParams(Context c, AttributeSet attrs) {
             super(c, attrs);
         }
@@ -234,4 +569,69 @@ public class StackedLayout extends ViewGroup {
             super(source);
         }
     }
+
+    /**
+     * Creates layouts in code without resolving any XML attributes or styles.
+     */
+    public static final class Builder {
+        private final Context context;
+        private int frameColor = Color.RED;
+        private float framePadding = 0;
+        private int frameCount = 10;
+        private int frameMaxCount = 10;
+        private boolean styled;
+        private int frameEndColor;
+        private int frameAlphaCurve = FrameVertices.CURVE_LINEAR;
+        private float frameShadowOffset;
+        private int frameShadowColor = Color.TRANSPARENT;
+        private boolean deckMode;
+
+        public Builder(Context context) {
+            this.context = context;
+        }
+
+        public Builder setFrameColor(int frameColor) {
+            this.frameColor = frameColor;
+            return this;
+        }
+
+        public Builder setFramePadding(float framePadding) {
+            this.framePadding = framePadding;
+            return this;
+        }
+
+        public Builder setFrameCount(int frameCount) {
+            this.frameCount = frameCount;
+            return this;
+        }
+
+        public Builder setFrameMaxCount(int frameMaxCount) {
+            this.frameMaxCount = frameMaxCount;
+            return this;
+        }
+
+        /**
+         * @see StackedLayout#setFrameStyle(int, int, float, int)
+         */
+        public Builder setFrameStyle(int endColor, int alphaCurve, float shadowOffset, int shadowColor) {
+            this.styled = true;
+            this.frameEndColor = endColor;
+            this.frameAlphaCurve = alphaCurve;
+            this.frameShadowOffset = shadowOffset;
+            this.frameShadowColor = shadowColor;
+            return this;
+        }
+
+        /**
+         * @see StackedLayout#setDeckMode(boolean)
+         */
+        public Builder setDeckMode(boolean deckMode) {
+            this.deckMode = deckMode;
+            return this;
+        }
+
+        public StackedLayout build() {
+            return new StackedLayout(context, this);
+        }
+    }
 }
@@ -0,0 +1,178 @@
+package com.peirra.stacked;
+
+import android.os.Build;
+import android.os.Trace;
+
+/**
+ * Opt-in timing of the measure, layout and draw passes of the stacked views.
+ * <p>
+ * Metrics are compiled in by setting the {@code STACKED_METRICS} build config field to true. When it is
+ * false {@link #ENABLED} is a compile time constant and every instrumented block is removed. When it is
+ * true each pass records its duration into a lock-free histogram and is wrapped in an
+ * {@link android.os.Trace} section (API 18+). Draws also count draw calls and frame layers.
+ * Use {@link #snapshot()} to export the aggregated percentiles.
+ */
+public final class StackedMetrics {
+
+    public static final boolean ENABLED = BuildConfig.STACKED_METRICS;
+
+    public static final int STACKED_LAYOUT = 0;
+    public static final int STACKED_IMAGE_VIEW = 1;
+    public static final int ASPECT_RATIO_FRAME_LAYOUT = 2;
+
+    public static final int MEASURE = 0;
+    public static final int LAYOUT = 1;
+    public static final int DRAW = 2;
+
+    private static final int VIEW_TYPES = 3;
+    private static final int PHASES = 3;
+
+    private static final String[] VIEW_NAMES = {"StackedLayout", "StackedImageView", "AspectRatioFrameLayout"};
+    private static final String[] PHASE_NAMES = {"measure", "layout", "draw"};
+    private static final String[] SECTIONS = new String[VIEW_TYPES * PHASES];
+    private static final boolean TRACE = Build.VERSION.SDK_INT >= 18;
+
+    private static final LatencyHistogram[] HISTOGRAMS = new LatencyHistogram[VIEW_TYPES * PHASES];
+    private static final LatencyHistogram[] DRAW_CALLS = new LatencyHistogram[VIEW_TYPES];
+    private static final LatencyHistogram[] LAYERS = new LatencyHistogram[VIEW_TYPES];
+
+    static {
+        for (int view = 0; view < VIEW_TYPES; view++) {
+            for (int phase = 0; phase < PHASES; phase++) {
+                SECTIONS[view * PHASES + phase] = VIEW_NAMES[view] + "#" + PHASE_NAMES[phase];
+                HISTOGRAMS[view * PHASES + phase] = new LatencyHistogram();
+            }
+            DRAW_CALLS[view] = new LatencyHistogram();
+            LAYERS[view] = new LatencyHistogram();
+        }
+    }
+
+    private StackedMetrics() {
+    }
+
+    /**
+     * Starts timing a pass, only call when {@link #ENABLED}.
+     *
+     * @return the start time to hand to {@link #end(int, int, long)}
+     */
+    static long begin(int view, int phase) {
+        if (TRACE) {
+            Trace.beginSection(SECTIONS[view * PHASES + phase]);
+        }
+        return System.nanoTime();
+    }
+
+    static void end(int view, int phase, long start) {
+        HISTOGRAMS[view * PHASES + phase].record(System.nanoTime() - start);
+        if (TRACE) {
+            Trace.endSection();
+        }
+    }
+
+    /**
+     * Records the canvas calls and frame layers of one draw pass.
+     */
+    static void countDraw(int view, int drawCalls, int layers) {
+        DRAW_CALLS[view].record(drawCalls);
+        LAYERS[view].record(layers);
+    }
+
+    public static Snapshot snapshot() {
+        return new Snapshot();
+    }
+
+    public static void reset() {
+        for (LatencyHistogram histogram : HISTOGRAMS) {
+            histogram.reset();
+        }
+        for (int view = 0; view < VIEW_TYPES; view++) {
+            DRAW_CALLS[view].reset();
+            LAYERS[view].reset();
+        }
+    }
+
+    /**
+     * Aggregated metrics at the time {@link #snapshot()} was called.
+     */
+    public static final class Snapshot {
+        private final long[] counts = new long[VIEW_TYPES * PHASES];
+        private final long[] p50 = new long[VIEW_TYPES * PHASES];
+        private final long[] p90 = new long[VIEW_TYPES * PHASES];
+        private final long[] p99 = new long[VIEW_TYPES * PHASES];
+        private final long[] drawCalls = new long[VIEW_TYPES];
+        private final long[] layers = new long[VIEW_TYPES];
+
+        Snapshot() {
+            for (int i = 0; i < HISTOGRAMS.length; i++) {
+                counts[i] = HISTOGRAMS[i].getCount();
+                p50[i] = HISTOGRAMS[i].getPercentile(50);
+                p90[i] = HISTOGRAMS[i].getPercentile(90);
+                p99[i] = HISTOGRAMS[i].getPercentile(99);
+            }
+            for (int view = 0; view < VIEW_TYPES; view++) {
+                drawCalls[view] = DRAW_CALLS[view].getSum();
+                layers[view] = LAYERS[view].getSum();
+            }
+        }
+
+        /**
+         * @return number of recorded passes
+         */
+        public long getCount(int view, int phase) {
+            return counts[view * PHASES + phase];
+        }
+
+        /**
+         * @param percentile 50, 90 or 99
+         * @return duration in nanoseconds, accurate to a factor of two
+         */
+        public long getPercentile(int view, int phase, int percentile) {
+            final int index = view * PHASES + phase;
+            switch (percentile) {
+                case 50:
+                    return p50[index];
+                case 90:
+                    return p90[index];
+                case 99:
+                    return p99[index];
+                default:
+                    throw new IllegalArgumentException("Unsupported percentile " + percentile);
+            }
+        }
+
+        /**
+         * @return canvas calls issued per draw pass on average
+         */
+        public float getDrawCallsPerFrame(int view) {
+            final long draws = counts[view * PHASES + DRAW];
+            return draws == 0 ? 0 : drawCalls[view] / (float) draws;
+        }
+
+        /**
+         * @return frame layers drawn per draw pass on average
+         */
+        public float getLayersPerFrame(int view) {
+            final long draws = counts[view * PHASES + DRAW];
+            return draws == 0 ? 0 : layers[view] / (float) draws;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder();
+            for (int view = 0; view < VIEW_TYPES; view++) {
+                sb.append(VIEW_NAMES[view]).append(':');
+                for (int phase = 0; phase < PHASES; phase++) {
+                    final int index = view * PHASES + phase;
+                    sb.append(' ').append(PHASE_NAMES[phase])
+                            .append("[n=").append(counts[index])
+                            .append(" p50=").append(p50[index])
+                            .append(" p90=").append(p90[index])
+                            .append(" p99=").append(p99[index]).append(']');
+                }
+                sb.append(" drawCalls/frame=").append(getDrawCallsPerFrame(view))
+                        .append(" layers/frame=").append(getLayersPerFrame(view)).append('\n');
+            }
+            return sb.toString();
+        }
+    }
+}
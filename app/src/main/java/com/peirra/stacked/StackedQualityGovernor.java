@@ -0,0 +1,185 @@
+package com.peirra.stacked;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+
+/**
+ * Optional governor that trades frame quality for smoothness across all stacked views.
+ * <p>
+ * Once {@link #setEnabled(boolean) enabled} the governor starts watching frame durations through the
+ * {@link Choreographer} as soon as a stacked view draws, which is what happens while a list of them
+ * scrolls. Under sustained jank every attached view steps down one {@link #getLevel() level} at a time:
+ * plain lines without anti-aliasing, then half the frames. Full quality comes back once the frames
+ * have been on time for a while. The governor only watches while stacked views keep drawing: a few frames
+ * without a stacked view drawn stop it and restore full quality until the next draw. Levels are
+ * cumulative. Choreographer needs API 16, below that the governor stays at {@link #LEVEL_FULL}.
+ * <p>
+ * Must only be used from the main thread.
+ */
+public final class StackedQualityGovernor {
+
+    public static final int LEVEL_FULL = 0;
+    public static final int LEVEL_NO_ANTI_ALIAS = 1;
+    public static final int LEVEL_REDUCED_COUNT = 2;
+
+    /**
+     * Notified on every level change.
+     */
+    public interface Listener {
+        void onQualityChanged(int oldLevel, int newLevel);
+    }
+
+    private static final boolean SUPPORTED = Build.VERSION.SDK_INT >= 16;
+
+    private static StackedQualityGovernor sInstance;
+
+    private final QualityPolicy policy = new QualityPolicy(LEVEL_REDUCED_COUNT);
+    private final ArrayList<Listener> views = new ArrayList<Listener>();
+    private final ArrayList<Listener> listeners = new ArrayList<Listener>();
+    private boolean enabled;
+    private boolean watching;
+    private boolean drawn; // a stacked view drew since the last frame callback
+    private int level;
+    private Object frameCallback; // Choreographer.FrameCallback, only created on API 16+
+
+    private StackedQualityGovernor() {
+    }
+
+    public static StackedQualityGovernor getInstance() {
+        if (sInstance == null) {
+            sInstance = new StackedQualityGovernor();
+        }
+        return sInstance;
+    }
+
+    /**
+     * Disabling the governor restores full quality right away.
+     */
+    public void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) {
+            return;
+        }
+        this.enabled = enabled;
+        if (!enabled) {
+            stopWatching();
+            policy.restore();
+            dispatch(LEVEL_FULL);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return one of {@link #LEVEL_FULL}, {@link #LEVEL_NO_ANTI_ALIAS} or {@link #LEVEL_REDUCED_COUNT}
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    public void addListener(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Called by the stacked views once attached.
+     *
+     * @return the level to draw with
+     */
+    int register(Listener view) {
+        views.add(view);
+        return level;
+    }
+
+    void unregister(Listener view) {
+        views.remove(view);
+        if (views.isEmpty()) {
+            // nothing left to draw faster
+            stopWatching();
+            policy.restore();
+            dispatch(LEVEL_FULL);
+        }
+    }
+
+    /**
+     * Called by the stacked views on every draw, starts watching the frames unless it already does.
+     */
+    static void onStackDrawn() {
+        final StackedQualityGovernor governor = sInstance;
+        if (governor == null || !governor.enabled || !SUPPORTED) {
+            return;
+        }
+        governor.drawn = true;
+        if (!governor.watching) {
+            governor.startWatching();
+        }
+    }
+
+    @TargetApi(16)
+    private void startWatching() {
+        if (frameCallback == null) {
+            frameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+        }
+        watching = true;
+        policy.reset();
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) frameCallback);
+    }
+
+    @TargetApi(16)
+    private void stopWatching() {
+        if (watching) {
+            watching = false;
+            Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) frameCallback);
+        }
+    }
+
+    @TargetApi(16)
+    private void onFrame(long frameTimeNanos) {
+        if (!watching) {
+            return;
+        }
+        final boolean idle = policy.isIdle(drawn);
+        drawn = false;
+        if (idle) {
+            // nothing stacked is drawing, the frame times are not ours: stop waking up every vsync
+            watching = false;
+            policy.restore();
+            dispatch(LEVEL_FULL);
+            return;
+        }
+        dispatch(policy.onFrame(frameTimeNanos));
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) frameCallback);
+    }
+
+    private void dispatch(int level) {
+        // views first so listeners see them at the new level
+        final int oldLevel = this.level;
+        if (oldLevel == level) {
+            return;
+        }
+        this.level = level;
+        for (int i = views.size() - 1; i >= 0; i--) {
+            views.get(i).onQualityChanged(oldLevel, level);
+        }
+        for (int i = listeners.size() - 1; i >= 0; i--) {
+            if (i < listeners.size()) {
+                listeners.get(i).onQualityChanged(oldLevel, level);
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.peirra.stacked;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.os.Build;
+
+/**
+ * Draws styled frames, built by {@link FrameVertices}, with a single {@code drawVertices} call.
+ * <p>
+ * Hardware accelerated canvases ignore {@code drawVertices} before API 29. There every layer is drawn
+ * with one {@code drawLines} call in its own color, after the layers of the shadow. That is one call per
+ * layer instead of one, but nothing is rasterized or kept in a bitmap. Styled frames are only used while
+ * the layers are at least a pixel apart, so the layers stay few.
+ */
+final class StyledFrames {
+
+    private static final boolean HARDWARE_VERTICES = Build.VERSION.SDK_INT >= 29;
+
+    private final FrameVertices vertices = new FrameVertices();
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int endColor;
+    private int alphaCurve;
+    private float shadowOffset;
+    private int shadowColor;
+    private boolean valid;
+    private FrameGeometry geometry;
+    private int[] layerColors = new int[0];
+    private int[] shadowColors = new int[0];
+    private int layerCount;
+    private boolean shadow;
+
+    StyledFrames() {
+        linePaint.setStyle(Paint.Style.STROKE);
+        linePaint.setStrokeCap(Paint.Cap.SQUARE);
+    }
+
+    void setStyle(int startColor, int endColor, int alphaCurve, float shadowOffset, int shadowColor) {
+        vertices.setStyle(startColor, endColor, alphaCurve, shadowOffset, shadowColor);
+        this.endColor = endColor;
+        this.alphaCurve = alphaCurve;
+        this.shadowOffset = shadowOffset;
+        this.shadowColor = shadowColor;
+    }
+
+    /**
+     * Follows a change of the frame color, takes effect with the next {@link #rebuild}.
+     */
+    void setStartColor(int startColor) {
+        vertices.setStyle(startColor, endColor, alphaCurve, shadowOffset, shadowColor);
+    }
+
+    boolean isStyled() {
+        return vertices.isStyled();
+    }
+
+    int getEndColor() {
+        return endColor;
+    }
+
+    float getShadowOffset() {
+        return shadowOffset;
+    }
+
+    /**
+     * Rebuilds the mesh, call whenever the frame geometry changes.
+     */
+    void rebuild(FrameGeometry geometry, float strokeWidth) {
+        this.geometry = geometry;
+        valid = vertices.set(geometry, strokeWidth);
+        linePaint.setStrokeWidth(Math.max(1f, strokeWidth));
+        layerCount = geometry.getLineCount() / FrameGeometry.FLOATS_PER_LAYER;
+        if (layerColors.length < layerCount) {
+            layerColors = new int[layerCount];
+            shadowColors = new int[layerCount];
+        }
+        shadow = shadowOffset != 0 && (shadowColor >>> 24) != 0;
+        for (int i = 0; i < layerCount; i++) {
+            layerColors[i] = vertices.layerColor(i, layerCount);
+            shadowColors[i] = vertices.shadowColor(layerColors[i]);
+        }
+    }
+
+    /**
+     * @return number of draw calls, 0 if the mesh could not be built and the frames have to be drawn the
+     * plain way
+     */
+    int draw(Canvas canvas) {
+        if (!valid) {
+            return 0;
+        }
+        if (HARDWARE_VERTICES || !canvas.isHardwareAccelerated()) {
+            canvas.drawVertices(Canvas.VertexMode.TRIANGLES, vertices.getVertexCount(), vertices.getVertices(), 0,
+                    null, 0, vertices.getColors(), 0, vertices.getIndices(), 0, vertices.getIndexCount(), paint);
+            return 1;
+        }
+        return drawLayers(canvas);
+    }
+
+    /**
+     * Draws the layers one by one, the same quads the mesh is made of.
+     */
+    private int drawLayers(Canvas canvas) {
+        final float[] lines = geometry.getLines();
+        int calls = 0;
+        if (shadow) {
+            final int saveCount = canvas.save();
+            canvas.translate(shadowOffset, shadowOffset);
+            for (int i = 0; i < layerCount; i++) {
+                linePaint.setColor(shadowColors[i]);
+                canvas.drawLines(lines, i * FrameGeometry.FLOATS_PER_LAYER, FrameGeometry.FLOATS_PER_LAYER, linePaint);
+                calls++;
+            }
+            canvas.restoreToCount(saveCount);
+        }
+        for (int i = 0; i < layerCount; i++) {
+            linePaint.setColor(layerColors[i]);
+            canvas.drawLines(lines, i * FrameGeometry.FLOATS_PER_LAYER, FrameGeometry.FLOATS_PER_LAYER, linePaint);
+            calls++;
+        }
+        return Math.max(1, calls);
+    }
+}
@@ -0,0 +1,111 @@
+package com.peirra.stacked;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a block of code many times and reports how many bytes the current thread allocated per call,
+ * using the HotSpot allocated-bytes accounting of {@link com.sun.management.ThreadMXBean}.
+ */
+final class AllocationHarness {
+
+    static final int WARMUP_CALLS = 20000;
+    static final int MEASURED_CALLS = 10000;
+
+    interface Block {
+        void run(int iteration);
+    }
+
+    static final class Result {
+        final long allocatedBytes;
+        final int calls;
+        final long gcCount;
+
+        Result(long allocatedBytes, int calls, long gcCount) {
+            this.allocatedBytes = allocatedBytes;
+            this.calls = calls;
+            this.gcCount = gcCount;
+        }
+
+        double bytesPerCall() {
+            return allocatedBytes / (double) calls;
+        }
+
+        @Override
+        public String toString() {
+            return allocatedBytes + " bytes over " + calls + " calls (" + bytesPerCall() + " per call), "
+                    + gcCount + " collections";
+        }
+    }
+
+    private static Result sOverhead;
+
+    private AllocationHarness() {
+    }
+
+    static boolean isSupported() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return bean instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported();
+    }
+
+    /**
+     * Warms the block up so the JIT has settled, then measures it.
+     */
+    static Result measure(Block block) {
+        final com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        bean.setThreadAllocatedMemoryEnabled(true);
+        final long threadId = Thread.currentThread().getId();
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            block.run(i);
+        }
+        final long gcBefore = gcCount();
+        final long before = bean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            block.run(i);
+        }
+        final long after = bean.getThreadAllocatedBytes(threadId);
+        return new Result(after - before, MEASURED_CALLS, gcCount() - gcBefore);
+    }
+
+    /**
+     * What the measurement itself allocates, measured once on an empty block.
+     */
+    static Result overhead() {
+        if (sOverhead == null) {
+            sOverhead = measure(new Block() {
+                @Override
+                public void run(int iteration) {
+                }
+            });
+        }
+        return sOverhead;
+    }
+
+    /**
+     * Fails unless the block allocated no more than the {@link #overhead() measurement overhead}.
+     */
+    static void assertNoAllocation(String path, Result result) {
+        assertNoAllocation(path, result, overhead());
+    }
+
+    /**
+     * Fails if the block allocated more than the baseline, a run of the same framework code without the
+     * code under test.
+     */
+    static void assertNoAllocation(String path, Result result, Result baseline) {
+        assertTrue(path + " allocated " + result + ", baseline " + baseline,
+                result.allocatedBytes <= baseline.allocatedBytes);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+}
@@ -0,0 +1,59 @@
+package com.peirra.stacked;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DeckGeometryTest {
+
+    @Test
+    public void offset_followsTheFrames() throws Exception {
+        final float frameOffset = FrameGeometry.frameOffset(16, 4);
+        assertEquals(0, DeckGeometry.offset(0, 4, frameOffset));
+        assertEquals(4, DeckGeometry.offset(1, 4, frameOffset));
+        assertEquals(12, DeckGeometry.offset(3, 4, frameOffset));
+    }
+
+    @Test
+    public void offset_stopsAtTheLastFrame() throws Exception {
+        assertEquals(12, DeckGeometry.offset(9, 4, 4));
+        // a single frame, every child stays on the image
+        assertEquals(0, DeckGeometry.offset(3, 1, 4));
+        assertEquals(0, DeckGeometry.offset(3, 0, 4));
+    }
+
+    @Test
+    public void offset_followsTheReducedFrameCount() throws Exception {
+        // the governor halves the count, the children spread like the frames actually drawn
+        final int reduced = QualityPolicy.reducedFrameCount(8);
+        final float frameOffset = FrameGeometry.frameOffset(16, reduced);
+        assertEquals(4, DeckGeometry.offset(1, reduced, frameOffset));
+        assertEquals(12, DeckGeometry.offset(7, reduced, frameOffset));
+    }
+
+    @Test
+    public void offset_rounds() throws Exception {
+        assertEquals(2, DeckGeometry.offset(1, 4, 1.5f));
+        assertEquals(3, DeckGeometry.offset(2, 4, 1.5f));
+    }
+
+    @Test
+    public void cull_skipsCoveredChildren() throws Exception {
+        assertEquals(DeckGeometry.SKIP, DeckGeometry.cull(0, 0, 100, 100, 0, 0, 100, 100, true));
+        assertEquals(DeckGeometry.SKIP, DeckGeometry.cull(0, 0, 100, 100, 10, 10, 90, 90, false));
+    }
+
+    @Test
+    public void cull_clipsChildrenThatStickOut() throws Exception {
+        // one frame up and to the right of the child in front
+        assertEquals(DeckGeometry.CLIP, DeckGeometry.cull(0, 4, 100, 104, 4, 0, 104, 100, true));
+        // no difference clip, drawn whole
+        assertEquals(DeckGeometry.DRAW, DeckGeometry.cull(0, 4, 100, 104, 4, 0, 104, 100, false));
+    }
+
+    @Test
+    public void cull_drawsChildrenOutsideOfTheFront() throws Exception {
+        assertEquals(DeckGeometry.DRAW, DeckGeometry.cull(0, 0, 100, 100, 100, 0, 200, 100, true));
+        assertEquals(DeckGeometry.DRAW, DeckGeometry.cull(0, 100, 100, 200, 0, 0, 100, 100, true));
+    }
+}
@@ -0,0 +1,110 @@
+package com.peirra.stacked;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.peirra.stacked.AllocationHarness.assertNoAllocation;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when the pure-Java helpers the stacked views call on their hot paths start allocating: the frame
+ * geometry rebuilt by onLayout and setFrameCount, the aspect ratio math and measure memoization of
+ * onMeasure, the metrics recorders and the placeholder decoded on bind.
+ * <p>
+ * The measure and layout passes of the real views are covered by {@link StackedViewAllocationTest}. onDraw
+ * is not covered: canvases are shadows outside a device, so only the frame line buffer is read here.
+ */
+public class DrawPathAllocationTest {
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(AllocationHarness.isSupported());
+    }
+
+    @Test
+    public void layout_rebuildsFramesWithoutAllocating() throws Exception {
+        final FrameGeometry geometry = new FrameGeometry();
+        assertNoAllocation("layout", AllocationHarness.measure(new AllocationHarness.Block() {
+            @Override
+            public void run(int i) {
+                final int frameCount = 1 + (i % 10);
+                geometry.set(16, 16, 16 + 200 + (i & 7), 16 + 300, frameCount,
+                        FrameGeometry.frameDelta(16f, frameCount));
+            }
+        }));
+    }
+
+    @Test
+    public void lineBuffer_readsWithoutAllocating() throws Exception {
+        final FrameGeometry geometry = new FrameGeometry();
+        geometry.set(16, 16, 216, 316, 10, 1);
+        final LineCanvas canvas = new LineCanvas();
+        assertNoAllocation("line buffer", AllocationHarness.measure(new AllocationHarness.Block() {
+            @Override
+            public void run(int i) {
+                canvas.drawLines(geometry.getLines(), 0, geometry.getLineCount());
+            }
+        }));
+    }
+
+    @Test
+    public void measure_resolvesSizeWithoutAllocating() throws Exception {
+        final AspectRatioMeasure ratioMeasure = new AspectRatioMeasure();
+        final MeasureCache measureCache = new MeasureCache(3);
+        assertNoAllocation("measure", AllocationHarness.measure(new AllocationHarness.Block() {
+            @Override
+            public void run(int i) {
+                final int width = 600 + (i & 63);
+                measureCache.begin();
+                measureCache.key(width);
+                measureCache.key(800);
+                measureCache.key(16f);
+                if (!measureCache.isHit()) {
+                    ratioMeasure.resolve(width, 800, 1.3333f, 0.01f);
+                    ratioMeasure.resolveSpecs(width | (1 << 30), 800 | (2 << 30), 1.3333f, 0.01f);
+                    measureCache.store(ratioMeasure.getWidth(), ratioMeasure.getHeight());
+                }
+            }
+        }));
+    }
+
+    @Test
+    public void metrics_recordWithoutAllocating() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        assertNoAllocation("metrics", AllocationHarness.measure(new AllocationHarness.Block() {
+            @Override
+            public void run(int i) {
+                histogram.record(1000 + i);
+            }
+        }));
+    }
+
+    @Test
+    public void bind_decodesPlaceholderWithoutAllocating() throws Exception {
+        final int[] image = new int[32 * 24];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = 0xff000000 | i * 0x010203;
+        }
+        final byte[] data = StackPlaceholder.encode(image, 32, 24, 4, 3);
+        final StackPlaceholder decoder = new StackPlaceholder();
+        assertNoAllocation("placeholder", AllocationHarness.measure(new AllocationHarness.Block() {
+            @Override
+            public void run(int i) {
+                decoder.decode(data);
+            }
+        }));
+    }
+
+    /**
+     * Canvas stand-in that reads every coordinate like the real one would.
+     */
+    private static final class LineCanvas {
+        float checksum;
+
+        void drawLines(float[] pts, int offset, int count) {
+            for (int i = offset; i < offset + count; i++) {
+                checksum += pts[i];
+            }
+        }
+    }
+}
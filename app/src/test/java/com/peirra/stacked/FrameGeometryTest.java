@@ -0,0 +1,118 @@
+package com.peirra.stacked;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FrameGeometryTest {
+
+    @Test
+    public void singleFrame_isImageRectangle() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(10, 20, 110, 220, 1, 4);
+        assertEquals(FrameGeometry.FLOATS_PER_LAYER, geometry.getLineCount());
+        float[] expected = {
+                10, 20, 110, 20,
+                110, 20, 110, 220,
+                110, 220, 10, 220,
+                10, 220, 10, 20};
+        assertArrayEquals(expected, copy(geometry), 0f);
+    }
+
+    @Test
+    public void layers_areOffsetUpAndRight() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(10, 20, 110, 220, 3, 4);
+        assertEquals(3 * FrameGeometry.FLOATS_PER_LAYER, geometry.getLineCount());
+        float[] lines = geometry.getLines();
+        int layer2 = 2 * FrameGeometry.FLOATS_PER_LAYER;
+        //vertical long of the third layer runs along its right edge
+        assertArrayEquals(new float[]{118, 12, 118, 212}, new float[]{lines[layer2], lines[layer2 + 1], lines[layer2 + 2], lines[layer2 + 3]}, 0f);
+        //horizontal short of the third layer sits on its bottom edge, one delta wide
+        assertArrayEquals(new float[]{114, 212, 118, 212}, new float[]{lines[layer2 + 12], lines[layer2 + 13], lines[layer2 + 14], lines[layer2 + 15]}, 0f);
+    }
+
+    @Test
+    public void add_appendsAndGrows() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(0, 0, 10, 10, 10, 1);
+        geometry.add(20, 0, 30, 10, 5, 1);
+        assertEquals(15 * FrameGeometry.FLOATS_PER_LAYER, geometry.getLineCount());
+        geometry.reset();
+        assertEquals(0, geometry.getLineCount());
+    }
+
+    @Test
+    public void set_copiesOtherGeometry() throws Exception {
+        FrameGeometry source = new FrameGeometry();
+        source.set(10, 20, 110, 220, 12, 4);
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(source);
+        assertArrayEquals(copy(source), copy(geometry), 0f);
+        assertEquals(source.getTop(), geometry.getTop(), 0f);
+        assertEquals(source.getRight(), geometry.getRight(), 0f);
+    }
+
+    @Test
+    public void extent_coversOutermostFrame() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(10, 20, 110, 220, 3, 4);
+        assertEquals(10f, geometry.getLeft(), 0f);
+        assertEquals(12f, geometry.getTop(), 0f);
+        assertEquals(118f, geometry.getRight(), 0f);
+        assertEquals(220f, geometry.getBottom(), 0f);
+    }
+
+    @Test
+    public void band_replacesInnerLayers() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.setBand(10, 20, 110, 220, 401, 0.02f);
+        //front frame and outermost frame only
+        assertEquals(2 * FrameGeometry.FLOATS_PER_LAYER, geometry.getLineCount());
+        assertTrue(geometry.hasBand());
+        float[] expected = {10, 20, 18, 12, 118, 12, 118, 212, 110, 220, 110, 20};
+        float[] band = new float[FrameGeometry.FLOATS_PER_BAND];
+        System.arraycopy(geometry.getBand(), 0, band, 0, band.length);
+        assertArrayEquals(expected, band, 1e-3f);
+        assertEquals(12f, geometry.getTop(), 1e-3f);
+        assertEquals(118f, geometry.getRight(), 1e-3f);
+
+        geometry.set(10, 20, 110, 220, 3, 4);
+        assertFalse(geometry.hasBand());
+    }
+
+    @Test
+    public void offset_keepsSubPixelPrecision() throws Exception {
+        assertEquals(2.1f, FrameGeometry.frameOffset(21f, 10), 1e-6f);
+        assertEquals(0.04f, FrameGeometry.frameOffset(16f, 400), 1e-6f);
+        assertTrue(FrameGeometry.isSubPixel(16f, 400));
+        assertFalse(FrameGeometry.isSubPixel(16f, 16));
+        assertFalse(FrameGeometry.isSubPixel(0f, 1));
+    }
+
+    @Test
+    public void stack_switchesToBandBelowOnePixel() throws Exception {
+        final FrameGeometry g = new FrameGeometry();
+        g.setStack(10, 20, 110, 120, 400, 16f);
+        assertTrue(g.hasBand());
+        assertEquals(2 * FrameGeometry.FLOATS_PER_LAYER, g.getLineCount());
+
+        g.setStack(10, 20, 110, 120, 8, 16f);
+        assertFalse(g.hasBand());
+        assertEquals(8 * FrameGeometry.FLOATS_PER_LAYER, g.getLineCount());
+        assertEquals(20 - 14f, g.getTop(), 0f);
+    }
+
+    @Test
+    public void delta_andStroke_matchViews() throws Exception {
+        assertEquals(2, FrameGeometry.frameDelta(21f, 10));
+        assertEquals(1, FrameGeometry.strokeWidth(21f, 10, 2));
+        assertEquals(2, FrameGeometry.strokeWidth(48f, 6, 2));
+    }
+
+    private static float[] copy(FrameGeometry geometry) {
+        float[] out = new float[geometry.getLineCount()];
+        System.arraycopy(geometry.getLines(), 0, out, 0, out.length);
+        return out;
+    }
+}
@@ -0,0 +1,77 @@
+package com.peirra.stacked;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class FrameVerticesTest {
+
+    @Test
+    public void line_becomesSquareCappedQuad() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(10, 20, 110, 220, 1, 4);
+        FrameVertices vertices = new FrameVertices();
+        vertices.setStyle(0xffff0000, 0xffff0000, FrameVertices.CURVE_LINEAR, 0, 0);
+        assertTrue(vertices.set(geometry, 2));
+        assertEquals(4 * 4 * 2, vertices.getVertexCount());
+        assertEquals(4 * 6, vertices.getIndexCount());
+        //top edge from (10,20) to (110,20), one pixel either side and beyond both ends
+        float[] expected = {9, 21, 9, 19, 111, 19, 111, 21};
+        float[] actual = new float[8];
+        System.arraycopy(vertices.getVertices(), 0, actual, 0, 8);
+        assertArrayEquals(expected, actual, 1e-4f);
+        assertArrayEquals(new short[]{0, 1, 2, 0, 2, 3}, Arrays.copyOf(vertices.getIndices(), 6));
+    }
+
+    @Test
+    public void layers_blendFromStartToEnd() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(0, 40, 100, 200, 3, 4);
+        FrameVertices vertices = new FrameVertices();
+        vertices.setStyle(0xff000000, 0x00ff0000, FrameVertices.CURVE_ACCELERATE, 0, 0);
+        assertTrue(vertices.isStyled());
+        assertTrue(vertices.set(geometry, 1));
+        int[] colors = vertices.getColors();
+        //16 vertices per layer
+        assertEquals(0xff000000, colors[0]);
+        //alpha only drops a quarter of the way halfway through, the color is halfway
+        assertEquals(0xbf800000, colors[16]);
+        assertEquals(0x00ff0000, colors[32 + 15]);
+    }
+
+    @Test
+    public void shadow_isDrawnFirstAndOffset() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(10, 20, 110, 220, 2, 4);
+        FrameVertices vertices = new FrameVertices();
+        vertices.setStyle(0xff000000, 0xff000000, FrameVertices.CURVE_LINEAR, 3, 0x80000000);
+        assertTrue(vertices.isStyled());
+        assertTrue(vertices.set(geometry, 2));
+        assertEquals(2 * 8 * 4 * 2, vertices.getVertexCount());
+        float[] v = vertices.getVertices();
+        int front = 8 * 4 * 2;
+        assertEquals(v[front] + 3, v[0], 1e-4f);
+        assertEquals(v[front + 1] + 3, v[1], 1e-4f);
+        assertEquals(0x80000000, vertices.getColors()[0]);
+        assertEquals(0xff000000, vertices.getColors()[8 * 4]);
+    }
+
+    @Test
+    public void plainStyle_isNotStyled() throws Exception {
+        FrameVertices vertices = new FrameVertices();
+        vertices.setStyle(0xff00ff00, 0xff00ff00, FrameVertices.CURVE_DECELERATE, 4, 0);
+        assertFalse(vertices.isStyled());
+    }
+
+    @Test
+    public void tooManyLines_fallsBack() throws Exception {
+        FrameGeometry geometry = new FrameGeometry();
+        geometry.set(0, 0, 100, 100, FrameVertices.MAX_VERTICES / 16 + 1, 0);
+        FrameVertices vertices = new FrameVertices();
+        vertices.setStyle(0xff000000, 0xffffffff, FrameVertices.CURVE_LINEAR, 0, 0);
+        assertFalse(vertices.set(geometry, 1));
+        assertEquals(0, vertices.getVertexCount());
+    }
+}
@@ -0,0 +1,140 @@
+package com.peirra.stacked;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class MappedThumbnailStoreTest {
+
+    private static final int CAPACITY = 64 * 1024;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("thumbnails", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdirs());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void put_thenGet_returnsSamePixels() throws Exception {
+        MappedThumbnailStore store = new MappedThumbnailStore(directory, CAPACITY);
+        store.put("poster@4x2", 4, 2, pixels(4, 2, 7));
+
+        MappedThumbnailStore.Entry entry = store.get("poster@4x2");
+        assertNotNull(entry);
+        assertEquals(4, entry.width);
+        assertEquals(2, entry.height);
+        assertEquals(pixels(4, 2, 7), entry.pixels);
+        assertTrue(entry.pixels.isReadOnly());
+        assertNull(store.get("poster@8x4"));
+        store.close();
+    }
+
+    @Test
+    public void entries_surviveReopen() throws Exception {
+        MappedThumbnailStore store = new MappedThumbnailStore(directory, CAPACITY);
+        store.put("a", 4, 4, pixels(4, 4, 1));
+        store.put("b", 8, 2, pixels(8, 2, 2));
+        store.close();
+
+        store = new MappedThumbnailStore(directory, CAPACITY);
+        assertEquals(2, store.size());
+        assertEquals(pixels(8, 2, 2), store.get("b").pixels);
+        store.close();
+    }
+
+    @Test
+    public void truncatedIndexRecord_isDropped() throws Exception {
+        MappedThumbnailStore store = new MappedThumbnailStore(directory, CAPACITY);
+        store.put("a", 4, 4, pixels(4, 4, 1));
+        store.put("b", 4, 4, pixels(4, 4, 2));
+        store.close();
+
+        RandomAccessFile index = new RandomAccessFile(new File(directory, MappedThumbnailStore.INDEX_FILE), "rw");
+        index.setLength(index.length() - 3);
+        index.close();
+
+        store = new MappedThumbnailStore(directory, CAPACITY);
+        assertEquals(1, store.size());
+        assertEquals(pixels(4, 4, 1), store.get("a").pixels);
+        store.put("c", 4, 4, pixels(4, 4, 3));
+        assertEquals(pixels(4, 4, 3), store.get("c").pixels);
+        store.close();
+    }
+
+    @Test
+    public void inconsistentIndexRecord_isDropped() throws Exception {
+        MappedThumbnailStore store = new MappedThumbnailStore(directory, CAPACITY);
+        store.put("a", 4, 4, pixels(4, 4, 1));
+        store.put("b", 4, 4, pixels(4, 4, 2));
+        store.close();
+
+        // the width of "b" no longer matches its length
+        RandomAccessFile index = new RandomAccessFile(new File(directory, MappedThumbnailStore.INDEX_FILE), "rw");
+        index.seek(index.length() - 12);
+        index.writeInt(5);
+        index.close();
+
+        store = new MappedThumbnailStore(directory, CAPACITY);
+        assertEquals(1, store.size());
+        assertNull(store.get("b"));
+        store.close();
+    }
+
+    @Test
+    public void indexRecordOutsideTheSegment_isDropped() throws Exception {
+        MappedThumbnailStore store = new MappedThumbnailStore(directory, CAPACITY);
+        store.put("a", 4, 4, pixels(4, 4, 1));
+        store.put("b", 4, 4, pixels(4, 4, 2));
+        store.close();
+
+        // an offset so large that offset + length overflows an int
+        RandomAccessFile index = new RandomAccessFile(new File(directory, MappedThumbnailStore.INDEX_FILE), "rw");
+        index.seek(index.length() - 16);
+        index.writeInt(Integer.MAX_VALUE - 8);
+        index.close();
+
+        store = new MappedThumbnailStore(directory, CAPACITY);
+        assertEquals(1, store.size());
+        assertEquals(pixels(4, 4, 1), store.get("a").pixels);
+        store.close();
+    }
+
+    @Test
+    public void fullSegment_isRecycled() throws Exception {
+        MappedThumbnailStore store = new MappedThumbnailStore(directory, CAPACITY);
+        // 64x64 pixels take a quarter of the segment
+        for (int i = 0; i < 5; i++) {
+            assertTrue(store.put("thumb" + i, 64, 64, pixels(64, 64, i)));
+        }
+        assertEquals(1, store.size());
+        assertEquals(pixels(64, 64, 4), store.get("thumb4").pixels);
+        assertFalse(store.put("huge", 256, 256, pixels(256, 256, 0)));
+        store.close();
+    }
+
+    private static ByteBuffer pixels(int width, int height, int seed) {
+        ByteBuffer buffer = ByteBuffer.allocate(width * height * MappedThumbnailStore.BYTES_PER_PIXEL);
+        for (int i = 0; i < buffer.capacity(); i++) {
+            buffer.put((byte) (i * 31 + seed));
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
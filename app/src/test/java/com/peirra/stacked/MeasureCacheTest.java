@@ -0,0 +1,76 @@
+package com.peirra.stacked;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MeasureCacheTest {
+
+    private static final int VISIBLE = 0;
+    private static final int GONE = 8;
+
+    private final Object first = new Object();
+    private final Object second = new Object();
+    private final Object third = new Object();
+
+    @Test
+    public void sameInputs_hit() throws Exception {
+        final MeasureCache cache = new MeasureCache(2);
+        assertFalse(pass(cache, 100, first, second));
+        cache.store(1, 2);
+        assertTrue(pass(cache, 100, first, second));
+        assertEquals(1, cache.getWidthAndState());
+        assertEquals(2, cache.getHeightAndState());
+        assertFalse(pass(cache, 101, first, second));
+    }
+
+    @Test
+    public void replacedChild_misses() throws Exception {
+        final MeasureCache cache = new MeasureCache(2);
+        pass(cache, 100, first, second);
+        cache.store(1, 2);
+        assertFalse(pass(cache, 100, first, third));
+    }
+
+    @Test
+    public void hiddenChild_misses() throws Exception {
+        final MeasureCache cache = new MeasureCache(2);
+        pass(cache, 100, first, second);
+        cache.store(1, 2);
+        cache.begin();
+        cache.key(100);
+        cache.key(2);
+        cache.child(first, VISIBLE);
+        cache.child(second, GONE);
+        assertFalse(cache.isHit());
+    }
+
+    @Test
+    public void removedChild_misses() throws Exception {
+        final MeasureCache cache = new MeasureCache(2);
+        pass(cache, 100, first, second, third);
+        cache.store(1, 2);
+        assertFalse(pass(cache, 100, first, second));
+        cache.store(1, 2);
+        assertTrue(pass(cache, 100, first, second));
+    }
+
+    @Test
+    public void invalidate_misses() throws Exception {
+        final MeasureCache cache = new MeasureCache(2);
+        pass(cache, 100, first);
+        cache.store(1, 2);
+        cache.invalidate();
+        assertFalse(pass(cache, 100, first));
+    }
+
+    private static boolean pass(MeasureCache cache, int spec, Object... children) {
+        cache.begin();
+        cache.key(spec);
+        cache.key(children.length);
+        for (Object child : children) {
+            cache.child(child, VISIBLE);
+        }
+        return cache.isHit();
+    }
+}
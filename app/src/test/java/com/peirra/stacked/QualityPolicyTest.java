@@ -0,0 +1,136 @@
+package com.peirra.stacked;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class QualityPolicyTest {
+
+    private static final long VSYNC = 16666667L;
+
+    private long time = 1000000000L;
+
+    @Test
+    public void smoothFrames_keepFullQuality() throws Exception {
+        final QualityPolicy policy = new QualityPolicy(3);
+        for (int i = 0; i < 200; i++) {
+            assertEquals(0, frame(policy, VSYNC));
+        }
+    }
+
+    @Test
+    public void sustainedJank_stepsDownOneLevelAtATime() throws Exception {
+        final QualityPolicy policy = new QualityPolicy(3);
+        smooth(policy, 10);
+        // isolated dropped frames are tolerated
+        for (int i = 0; i < QualityPolicy.JANK_THRESHOLD - 1; i++) {
+            frame(policy, 2 * VSYNC);
+            smooth(policy, 5);
+        }
+        assertEquals(0, policy.getLevel());
+
+        frame(policy, 3 * VSYNC);
+        assertEquals(1, policy.getLevel());
+
+        for (int i = 0; i < 3 * QualityPolicy.JANK_THRESHOLD; i++) {
+            frame(policy, 2 * VSYNC);
+        }
+        assertEquals(3, policy.getLevel());
+        frame(policy, 2 * VSYNC);
+        assertEquals(3, policy.getLevel());
+    }
+
+    @Test
+    public void settledScroll_restoresFullQuality() throws Exception {
+        final QualityPolicy policy = new QualityPolicy(3);
+        smooth(policy, 2);
+        for (int i = 0; i < 2 * QualityPolicy.JANK_THRESHOLD; i++) {
+            frame(policy, 2 * VSYNC);
+        }
+        assertEquals(2, policy.getLevel());
+
+        smooth(policy, QualityPolicy.RECOVERY_FRAMES - 1);
+        assertEquals(2, policy.getLevel());
+        smooth(policy, 1);
+        assertEquals(0, policy.getLevel());
+    }
+
+    @Test
+    public void idle_onlyAfterFramesInARowWithoutDraws() throws Exception {
+        final QualityPolicy policy = new QualityPolicy(3);
+        for (int i = 0; i < QualityPolicy.IDLE_FRAMES - 1; i++) {
+            assertFalse(policy.isIdle(false));
+        }
+        // a draw starts the count over
+        assertFalse(policy.isIdle(true));
+        for (int i = 0; i < QualityPolicy.IDLE_FRAMES - 1; i++) {
+            assertFalse(policy.isIdle(false));
+        }
+        assertTrue(policy.isIdle(false));
+
+        policy.reset();
+        assertFalse(policy.isIdle(false));
+    }
+
+    @Test
+    public void idle_doesNotWaitForRecovery() throws Exception {
+        final QualityPolicy policy = new QualityPolicy(3);
+        smooth(policy, 2);
+        for (int i = 0; i < 2 * QualityPolicy.JANK_THRESHOLD; i++) {
+            frame(policy, 2 * VSYNC);
+        }
+        assertEquals(2, policy.getLevel());
+        for (int i = 0; i < QualityPolicy.IDLE_FRAMES - 1; i++) {
+            policy.isIdle(false);
+        }
+        assertTrue(policy.isIdle(false));
+    }
+
+    @Test
+    public void reset_ignoresThePause() throws Exception {
+        final QualityPolicy policy = new QualityPolicy(3);
+        smooth(policy, 10);
+        policy.reset();
+        time += 5000000000L;
+        for (int i = 0; i < QualityPolicy.WINDOW; i++) {
+            frame(policy, VSYNC);
+        }
+        assertEquals(0, policy.getLevel());
+    }
+
+    @Test
+    public void budget_followsTheRefreshRate() throws Exception {
+        final QualityPolicy policy = new QualityPolicy(3);
+        // 120Hz, 60Hz frames are dropped frames there
+        final long fast = VSYNC / 2;
+        smooth(policy, 5, fast);
+        for (int i = 0; i < QualityPolicy.JANK_THRESHOLD; i++) {
+            frame(policy, VSYNC);
+        }
+        assertEquals(1, policy.getLevel());
+    }
+
+    @Test
+    public void reducedFrameCount_keepsAStack() throws Exception {
+        assertEquals(1, QualityPolicy.reducedFrameCount(1));
+        assertEquals(2, QualityPolicy.reducedFrameCount(2));
+        assertEquals(2, QualityPolicy.reducedFrameCount(3));
+        assertEquals(5, QualityPolicy.reducedFrameCount(10));
+        assertEquals(200, QualityPolicy.reducedFrameCount(400));
+    }
+
+    private void smooth(QualityPolicy policy, int frames) {
+        smooth(policy, frames, VSYNC);
+    }
+
+    private void smooth(QualityPolicy policy, int frames, long interval) {
+        for (int i = 0; i < frames; i++) {
+            frame(policy, interval);
+        }
+    }
+
+    private int frame(QualityPolicy policy, long interval) {
+        time += interval;
+        return policy.onFrame(time);
+    }
+}
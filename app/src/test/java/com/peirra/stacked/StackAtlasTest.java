@@ -0,0 +1,141 @@
+package com.peirra.stacked;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StackAtlasTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("stacks", ".atlas");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.delete();
+    }
+
+    @Test
+    public void thumbnails_arePackedOnShelves() throws Exception {
+        StackAtlasWriter writer = new StackAtlasWriter(file, 16, 16);
+        writer.add("a", 8, 6, colors(8, 6, 0xff102030));
+        writer.add("b", 8, 6, colors(8, 6, 0xff405060));
+        writer.add("c", 10, 10, colors(10, 10, 0xff708090));
+        writer.add("d", 16, 16, colors(16, 16, 0xffa0b0c0));
+        writer.close();
+
+        StackAtlas atlas = new StackAtlas(file);
+        assertEquals(4, atlas.size());
+        assertEquals(2, atlas.getPageCount());
+        assertRegion(atlas.getRegion("a"), 0, 0, 0, 8, 6);
+        assertRegion(atlas.getRegion("b"), 0, 8, 0, 8, 6);
+        assertRegion(atlas.getRegion("c"), 0, 0, 6, 10, 10);
+        assertRegion(atlas.getRegion("d"), 1, 0, 0, 16, 16);
+        assertNull(atlas.getRegion("e"));
+        atlas.close();
+    }
+
+    @Test
+    public void pixels_roundTrip() throws Exception {
+        StackAtlasWriter writer = new StackAtlasWriter(file, 16, 16);
+        writer.add("a", 8, 6, colors(8, 6, 0xff102030));
+        writer.add("b", 4, 4, colors(4, 4, 0x80ff0000));
+        writer.close();
+
+        StackAtlas atlas = new StackAtlas(file);
+        ByteBuffer page = atlas.getPage(0);
+        assertTrue(page.isReadOnly());
+        assertEquals(16 * 16 * StackAtlas.BYTES_PER_PIXEL, page.remaining());
+        assertPixel(page, 16, 7, 5, 0x10, 0x20, 0x30, 0xff);
+        //half transparent red is stored premultiplied
+        StackAtlas.Region b = atlas.getRegion("b");
+        assertPixel(page, 16, b.left + 3, b.top + 3, 0x80, 0, 0, 0x80);
+        //outside any thumbnail the page is transparent
+        assertPixel(page, 16, 15, 15, 0, 0, 0, 0);
+        atlas.close();
+    }
+
+    @Test
+    public void emptyAtlas_opens() throws Exception {
+        new StackAtlasWriter(file, 16, 16).close();
+        StackAtlas atlas = new StackAtlas(file);
+        assertEquals(0, atlas.size());
+        assertEquals(0, atlas.getPageCount());
+        atlas.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void thumbnailLargerThanPage_isRejected() throws Exception {
+        StackAtlasWriter writer = new StackAtlasWriter(file, 16, 16);
+        try {
+            writer.add("a", 17, 4, colors(17, 4, 0));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void duplicateId_isRejected() throws Exception {
+        StackAtlasWriter writer = new StackAtlasWriter(file, 16, 16);
+        try {
+            writer.add("a", 4, 4, colors(4, 4, 0));
+            writer.add("a", 4, 4, colors(4, 4, 0));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unfinishedAtlas_isRejected() throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(StackAtlas.PAGE_ALIGNMENT + 16 * 16 * 4);
+        raf.close();
+        new StackAtlas(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedIndex_isRejected() throws Exception {
+        StackAtlasWriter writer = new StackAtlasWriter(file, 16, 16);
+        writer.add("a", 4, 4, colors(4, 4, 0));
+        writer.add("b", 4, 4, colors(4, 4, 0));
+        writer.close();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(raf.length() - 3);
+        raf.close();
+        new StackAtlas(file);
+    }
+
+    private static int[] colors(int width, int height, int color) {
+        int[] colors = new int[width * height];
+        Arrays.fill(colors, color);
+        return colors;
+    }
+
+    private static void assertRegion(StackAtlas.Region region, int page, int left, int top, int width, int height) {
+        assertNotNull(region);
+        assertEquals(page, region.page);
+        assertEquals(left, region.left);
+        assertEquals(top, region.top);
+        assertEquals(width, region.width);
+        assertEquals(height, region.height);
+    }
+
+    private static void assertPixel(ByteBuffer page, int pageWidth, int x, int y, int r, int g, int b, int a) {
+        int offset = (y * pageWidth + x) * StackAtlas.BYTES_PER_PIXEL;
+        assertEquals(r, page.get(offset) & 0xff);
+        assertEquals(g, page.get(offset + 1) & 0xff);
+        assertEquals(b, page.get(offset + 2) & 0xff);
+        assertEquals(a, page.get(offset + 3) & 0xff);
+    }
+}
@@ -0,0 +1,49 @@
+package com.peirra.stacked;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StackMeasureTest {
+
+    @Test
+    public void measuredSize_removesThePaddingFromTheLargerSize() throws Exception {
+        assertEquals(268, StackMeasure.measuredSize(300, 100, 16));
+        assertEquals(368, StackMeasure.measuredSize(300, 400, 16));
+        assertEquals(297, StackMeasure.measuredSize(300, 0, 1.5f));
+    }
+
+    @Test
+    public void layoutChild_centersWithinThePadding() throws Exception {
+        final StackMeasure measure = new StackMeasure();
+        measure.layoutChild(0, 0, 300, 400, 0, 0, 0, 0, 300, 400, 16);
+        assertBounds(measure, 16, 16, 284, 384);
+
+        // smaller child, centered in the padded frame
+        measure.layoutChild(0, 0, 300, 400, 0, 0, 0, 0, 132, 232, 16);
+        assertBounds(measure, 100, 100, 200, 300);
+    }
+
+    @Test
+    public void layoutChild_honorsPaddingAndMargins() throws Exception {
+        final StackMeasure measure = new StackMeasure();
+        measure.layoutChild(10, 20, 290, 380, 4, 6, 8, 2, 264, 324, 8);
+        // frame 22,34 - 274,370, child 248x308
+        assertBounds(measure, 24, 48, 272, 356);
+    }
+
+    @Test
+    public void layoutChild_roundsLikeGravity() throws Exception {
+        final StackMeasure measure = new StackMeasure();
+        measure.layoutChild(0, 0, 101, 101, 0, 0, 0, 0, 100, 100, 2.5f);
+        // frame 2,2 - 98,98 after truncation, the odd pixel left by the 95 pixel child goes to the right
+        assertBounds(measure, 2, 2, 97, 97);
+    }
+
+    private static void assertBounds(StackMeasure measure, int left, int top, int right, int bottom) {
+        assertEquals(left, measure.getLeft());
+        assertEquals(top, measure.getTop());
+        assertEquals(right, measure.getRight());
+        assertEquals(bottom, measure.getBottom());
+    }
+}
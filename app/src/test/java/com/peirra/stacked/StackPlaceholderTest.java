@@ -0,0 +1,79 @@
+package com.peirra.stacked;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class StackPlaceholderTest {
+
+    @Test
+    public void solidColor_roundTrips() throws Exception {
+        final int[] image = new int[40 * 30];
+        Arrays.fill(image, 0xff3080c0);
+        final byte[] data = StackPlaceholder.encode(image, 40, 30, 4, 3);
+        assertEquals(38, data.length);
+        assertEquals(StackPlaceholder.length(4, 3), data.length);
+
+        final int[] pixels = new StackPlaceholder().decode(data);
+        assertEquals(StackPlaceholder.SIZE * StackPlaceholder.SIZE, pixels.length);
+        for (int p : pixels) {
+            assertColor(0xff3080c0, p, 1);
+        }
+    }
+
+    @Test
+    public void gradient_keepsItsDirection() throws Exception {
+        final int width = 64;
+        final int[] image = new int[width * 48];
+        for (int y = 0; y < 48; y++) {
+            for (int x = 0; x < width; x++) {
+                final int v = x * 255 / (width - 1);
+                image[y * width + x] = 0xff000000 | v << 16 | v << 8 | v;
+            }
+        }
+        final int[] pixels = new StackPlaceholder().decode(StackPlaceholder.encode(image, width, 48, 4, 3));
+        final int size = StackPlaceholder.SIZE;
+        for (int y = 0; y < size; y++) {
+            for (int x = 1; x < size; x++) {
+                assertTrue((pixels[y * size + x] & 0xff) >= (pixels[y * size + x - 1] & 0xff));
+            }
+            assertColor(pixels[0], pixels[y * size], 1);
+        }
+        assertTrue((pixels[0] & 0xff) < 0x40);
+        assertTrue((pixels[size - 1] & 0xff) > 0xc0);
+    }
+
+    @Test
+    public void decode_reusesItsBuffer() throws Exception {
+        final int[] image = new int[16];
+        Arrays.fill(image, 0xff102030);
+        final StackPlaceholder decoder = new StackPlaceholder();
+        final int[] first = decoder.decode(StackPlaceholder.encode(image, 4, 4, 1, 1));
+        Arrays.fill(image, 0xffa0b0c0);
+        final int[] second = decoder.decode(StackPlaceholder.encode(image, 4, 4, 2, 2));
+        assertSame(first, second);
+        assertColor(0xffa0b0c0, second[0], 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void decode_rejectsTruncatedData() throws Exception {
+        final byte[] data = StackPlaceholder.encode(new int[16], 4, 4, 4, 3);
+        new StackPlaceholder().decode(Arrays.copyOf(data, data.length - 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void encode_rejectsTooManyComponents() throws Exception {
+        StackPlaceholder.encode(new int[16], 4, 4, StackPlaceholder.MAX_COMPONENTS + 1, 1);
+    }
+
+    private static void assertColor(int expected, int actual, int tolerance) {
+        for (int shift = 0; shift <= 24; shift += 8) {
+            final int e = (expected >> shift) & 0xff;
+            final int a = (actual >> shift) & 0xff;
+            assertTrue(Integer.toHexString(actual) + " != " + Integer.toHexString(expected),
+                    Math.abs(e - a) <= tolerance);
+        }
+    }
+}
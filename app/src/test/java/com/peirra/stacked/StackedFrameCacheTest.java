@@ -0,0 +1,102 @@
+package com.peirra.stacked;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.*;
+
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class StackedFrameCacheTest {
+
+    private final Paint paint = new Paint();
+    private final FrameGeometry geometry = new FrameGeometry();
+
+    @Test
+    public void key_dependsOnSizeAndFramesOnly() throws Exception {
+        final StackedFrameCache.Key key = new StackedFrameCache.Key(200, 300, 10, 1.6f, 2, true);
+        assertEquals(key, new StackedFrameCache.Key(200, 300, 10, 1.6f, 2, true));
+        assertEquals(key.hashCode(), new StackedFrameCache.Key(200, 300, 10, 1.6f, 2, true).hashCode());
+
+        assertNotEquals(key, new StackedFrameCache.Key(201, 300, 10, 1.6f, 2, true));
+        assertNotEquals(key, new StackedFrameCache.Key(200, 301, 10, 1.6f, 2, true));
+        assertNotEquals(key, new StackedFrameCache.Key(200, 300, 9, 1.6f, 2, true));
+        assertNotEquals(key, new StackedFrameCache.Key(200, 300, 10, 1.5f, 2, true));
+        assertNotEquals(key, new StackedFrameCache.Key(200, 300, 10, 1.6f, 1, true));
+        assertNotEquals(key, new StackedFrameCache.Key(200, 300, 10, 1.6f, 2, false));
+    }
+
+    @Test
+    public void key_coversTheCompleteFrameSet() throws Exception {
+        // 16px of layers and a 2px stroke around a 300x400 image
+        final StackedFrameCache.Key key = new StackedFrameCache.Key(300, 400, 9, 2, 2, true);
+        assertEquals(16, key.reach());
+        assertEquals(2, key.pad());
+        assertEquals(320, key.width());
+        assertEquals(420, key.height());
+        assertEquals(320 * 420, key.byteCount());
+    }
+
+    @Test
+    public void frames_drawWithASingleBlit() throws Exception {
+        final StackedFrameCache cache = new StackedFrameCache(1024 * 1024);
+        final Rect bounds = new Rect(16, 16, 216, 316);
+        final StackedFrameCache.Frames frames = obtain(cache, bounds, 9);
+        assertEquals(1, frames.draw(new Canvas(), bounds, paint));
+    }
+
+    @Test
+    public void obtain_sharesFramesBetweenPositions() throws Exception {
+        final StackedFrameCache cache = new StackedFrameCache(1024 * 1024);
+        final StackedFrameCache.Frames first = obtain(cache, new Rect(16, 16, 216, 316), 9);
+        final StackedFrameCache.Frames second = obtain(cache, new Rect(40, 80, 240, 380), 9);
+        assertNotNull(first);
+        assertSame(first, second);
+        assertEquals(1, cache.missCount());
+        assertEquals(1, cache.hitCount());
+    }
+
+    @Test
+    public void obtain_skipsSingleFrames() throws Exception {
+        final StackedFrameCache cache = new StackedFrameCache(1024 * 1024);
+        assertNull(obtain(cache, new Rect(16, 16, 216, 316), 1));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void obtain_staysWithinBudget() throws Exception {
+        final int entry = new StackedFrameCache.Key(200, 300, 9, 2, 2, true).byteCount();
+        final StackedFrameCache cache = new StackedFrameCache(2 * entry + entry / 2);
+        final Rect bounds = new Rect(16, 16, 216, 316);
+        final StackedFrameCache.Frames first = obtain(cache, bounds, 9);
+        obtain(cache, new Rect(16, 16, 216, 317), 9);
+        assertEquals(2 * entry, cache.size(), entry / 10);
+        assertEquals(0, cache.evictionCount());
+
+        obtain(cache, new Rect(16, 16, 216, 318), 9);
+        assertEquals(1, cache.evictionCount());
+        assertTrue(cache.size() <= cache.maxSize());
+        // the least recently used entry went first
+        assertNotSame(first, obtain(cache, bounds, 9));
+    }
+
+    @Test
+    public void obtain_rejectsEntriesLargerThanTheBudget() throws Exception {
+        final StackedFrameCache cache = new StackedFrameCache(1024);
+        assertNull(obtain(cache, new Rect(16, 16, 216, 316), 9));
+        assertEquals(0, cache.size());
+    }
+
+    private StackedFrameCache.Frames obtain(StackedFrameCache cache, Rect bounds, int frameCount) {
+        paint.setStrokeWidth(2);
+        paint.setAntiAlias(true);
+        geometry.set(bounds.left, bounds.top, bounds.right, bounds.bottom, frameCount, 2);
+        return cache.obtain(bounds, frameCount, 2, geometry, paint);
+    }
+}
@@ -0,0 +1,58 @@
+package com.peirra.stacked;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StackedGridGeometryTest {
+
+    @Test
+    public void cells_shareFrameBands() throws Exception {
+        StackedGridGeometry geometry = new StackedGridGeometry();
+        geometry.set(320, 3, 16, 0, 10);
+        //(320 + 2 * 16) / 3, three cells minus the two shared bands fill the width
+        assertEquals(117, geometry.getCellWidth());
+        assertEquals(117, geometry.getCellHeight());
+        assertEquals(0, geometry.getLeft(0));
+        assertEquals(101, geometry.getLeft(1));
+        assertEquals(202, geometry.getLeft(2));
+        assertEquals(0, geometry.getLeft(3));
+        assertEquals(101, geometry.getTop(3));
+        assertEquals(4, geometry.getRowCount());
+        assertEquals(3 * 101 + 117, geometry.getContentHeight());
+    }
+
+    @Test
+    public void aspectRatio_setsCellHeight() throws Exception {
+        StackedGridGeometry geometry = new StackedGridGeometry();
+        geometry.set(200, 2, 0, 0.5f, 4);
+        assertEquals(100, geometry.getCellWidth());
+        assertEquals(200, geometry.getCellHeight());
+        assertEquals(200, geometry.getStrideY());
+    }
+
+    @Test
+    public void visibleRows_coverWindow() throws Exception {
+        StackedGridGeometry geometry = new StackedGridGeometry();
+        geometry.set(300, 3, 10, 0, 30);
+        //cells are 106 high with a stride of 96
+        assertEquals(0, geometry.getFirstRow(0));
+        assertEquals(0, geometry.getFirstRow(105));
+        assertEquals(1, geometry.getFirstRow(106));
+        assertEquals(0, geometry.getFirstRow(-50));
+        assertEquals(2, geometry.getLastRow(193));
+        assertEquals(1, geometry.getLastRow(192));
+        assertEquals(9, geometry.getLastRow(100000));
+        assertEquals(-1, geometry.getLastRow(0));
+        assertEquals(27, geometry.getFirstPosition(9));
+        assertEquals(29, geometry.getLastPosition(9));
+    }
+
+    @Test
+    public void lastRow_endsAtItemCount() throws Exception {
+        StackedGridGeometry geometry = new StackedGridGeometry();
+        geometry.set(300, 4, 0, 0, 5);
+        assertEquals(2, geometry.getRowCount());
+        assertEquals(4, geometry.getLastPosition(1));
+    }
+}
@@ -0,0 +1,123 @@
+package com.peirra.stacked;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.drawable.ColorDrawable;
+import android.view.View;
+import android.view.View.MeasureSpec;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ImageView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricGradleTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static com.peirra.stacked.AllocationHarness.assertNoAllocation;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails when the measure and layout passes of the real stacked views start allocating.
+ * <p>
+ * Every pass is forced through the full, uncached path. The same passes over a plain {@link FrameLayout}
+ * are the baseline, so whatever the framework and Robolectric allocate on the way is not blamed on the
+ * views.
+ */
+@RunWith(RobolectricGradleTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 21)
+public class StackedViewAllocationTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() throws Exception {
+        assumeTrue(AllocationHarness.isSupported());
+        context = RuntimeEnvironment.application;
+    }
+
+    @Test
+    public void stackedLayout_measuresAndLaysOutWithoutAllocating() throws Exception {
+        final StackedLayout layout = new StackedLayout.Builder(context)
+                .setFramePadding(16)
+                .setFrameCount(10)
+                .build();
+        assertNoAllocation("StackedLayout", relayoutChild(layout), relayoutChild(new FrameLayout(context)));
+    }
+
+    @Test
+    public void stackedImageView_measuresAndLaysOutWithoutAllocating() throws Exception {
+        final StackedImageView view = new StackedImageView(context, new StackSpec.Builder()
+                .setFramePadding(16)
+                .setFrameCount(10)
+                .setScaleType(ImageView.ScaleType.FIT_XY)
+                .build());
+        view.setImageDrawable(new SizedDrawable(600, 800));
+        final FrameLayout baseline = new FrameLayout(context);
+        baseline.setForeground(new SizedDrawable(600, 800));
+        assertNoAllocation("StackedImageView", remeasure(view), remeasure(baseline));
+    }
+
+    /**
+     * A child asking for a new layout, the way an image or text change inside the stack does.
+     */
+    private static AllocationHarness.Result relayoutChild(final ViewGroup parent) {
+        final View child = new View(parent.getContext());
+        parent.addView(child);
+        final int widthSpec = MeasureSpec.makeMeasureSpec(300, MeasureSpec.EXACTLY);
+        final int heightSpec = MeasureSpec.makeMeasureSpec(400, MeasureSpec.EXACTLY);
+        return AllocationHarness.measure(new AllocationHarness.Block() {
+            @Override
+            public void run(int i) {
+                child.requestLayout();
+                parent.measure(widthSpec, heightSpec);
+                parent.layout(0, 0, parent.getMeasuredWidth(), parent.getMeasuredHeight());
+            }
+        });
+    }
+
+    /**
+     * New measure specs that resolve to the same size, which misses every measure cache without changing
+     * the frame of the view.
+     */
+    private static AllocationHarness.Result remeasure(final View view) {
+        final int exactly = MeasureSpec.makeMeasureSpec(300, MeasureSpec.EXACTLY);
+        final int atMost = MeasureSpec.makeMeasureSpec(300, MeasureSpec.AT_MOST);
+        final int heightSpec = MeasureSpec.makeMeasureSpec(400, MeasureSpec.EXACTLY);
+        return AllocationHarness.measure(new AllocationHarness.Block() {
+            @Override
+            public void run(int i) {
+                view.forceLayout();
+                view.measure((i & 1) == 0 ? exactly : atMost, heightSpec);
+                view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+            }
+        });
+    }
+
+    /**
+     * Larger than the view so both spec modes resolve to the same size, scaled with FIT_XY so laying out
+     * only sets its bounds.
+     */
+    private static final class SizedDrawable extends ColorDrawable {
+        private final int width;
+        private final int height;
+
+        SizedDrawable(int width, int height) {
+            super(Color.GRAY);
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getIntrinsicWidth() {
+            return width;
+        }
+
+        @Override
+        public int getIntrinsicHeight() {
+            return height;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.peirra.stacked.benchmark;
+
+import com.peirra.stacked.AspectRatioMeasure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ratio resolution {@code AspectRatioFrameLayout.onMeasure} runs after its natural measure pass.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class AspectRatioBenchmark {
+
+    @Param({"110x146", "720x960", "1080x1920"})
+    public String viewSize;
+
+    @Param({"1.3333", "1.0", "0.75"})
+    public float aspectRatio;
+
+    private int width;
+    private int height;
+
+    private final AspectRatioMeasure ratioMeasure = new AspectRatioMeasure();
+
+    @Setup
+    public void setUp() {
+        final int split = viewSize.indexOf('x');
+        width = Integer.parseInt(viewSize.substring(0, split));
+        height = Integer.parseInt(viewSize.substring(split + 1));
+    }
+
+    @Benchmark
+    public int onMeasure() {
+        ratioMeasure.resolve(width, height, aspectRatio, 0.01f);
+        return ratioMeasure.getWidth() * 31 + ratioMeasure.getHeight();
+    }
+}
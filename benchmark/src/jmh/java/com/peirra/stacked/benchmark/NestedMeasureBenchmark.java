@@ -0,0 +1,144 @@
+package com.peirra.stacked.benchmark;
+
+import com.peirra.stacked.AspectRatioMeasure;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure counts of {@code AspectRatioFrameLayout} nested under weighted {@code LinearLayout}s.
+ * <p>
+ * The tree is modelled on the JVM: a weighted LinearLayout measures its child twice, an aspect ratio layout
+ * measures its content once or twice depending on the mode, and the leaf counts how often it was
+ * measured. The {@code leafMeasures} counter reports how often the leaf was measured. Two-pass mode pays
+ * an extra subtree measure whenever the offered space does not already match the ratio, and every
+ * weighted level above doubles that cost; single-pass mode measures the subtree 2^depth times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NestedMeasureBenchmark {
+
+    private static final int EXACTLY = 1 << 30;
+    private static final int AT_MOST = 2 << 30;
+    private static final int MODE_MASK = 0x3 << 30;
+
+    @Param({"1", "2", "4", "6"})
+    public int depth;
+
+    @Param({"false", "true"})
+    public boolean singlePass;
+
+    private Node root;
+    private Leaf leaf;
+
+    @State(Scope.Thread)
+    @AuxCounters
+    public static class Counters {
+        public long leafMeasures;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            leafMeasures = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        leaf = new Leaf();
+        Node node = leaf;
+        for (int i = 0; i < depth; i++) {
+            node = new WeightedLinearLayout(new AspectRatioLayout(node, 1.3333f, singlePass));
+        }
+        root = node;
+    }
+
+    @Benchmark
+    public int measure(Counters counters) {
+        leaf.measures = 0;
+        root.measure(1080 | AT_MOST, 1920 | AT_MOST);
+        counters.leafMeasures += leaf.measures;
+        return root.measuredWidth;
+    }
+
+    abstract static class Node {
+        int measuredWidth;
+        int measuredHeight;
+
+        abstract void measure(int widthSpec, int heightSpec);
+    }
+
+    /**
+     * A match_parent leaf, it takes all the space it is offered.
+     */
+    static final class Leaf extends Node {
+        int measures;
+
+        @Override
+        void measure(int widthSpec, int heightSpec) {
+            measures++;
+            measuredWidth = widthSpec & ~MODE_MASK;
+            measuredHeight = heightSpec & ~MODE_MASK;
+        }
+    }
+
+    /**
+     * A LinearLayout with a single weighted child: once to learn its size, once more to hand out the
+     * remaining space.
+     */
+    static final class WeightedLinearLayout extends Node {
+        private final Node child;
+
+        WeightedLinearLayout(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        void measure(int widthSpec, int heightSpec) {
+            child.measure(widthSpec, heightSpec);
+            child.measure(widthSpec, (heightSpec & ~MODE_MASK) | EXACTLY);
+            measuredWidth = child.measuredWidth;
+            measuredHeight = child.measuredHeight;
+        }
+    }
+
+    /**
+     * Mirrors AspectRatioFrameLayout.onMeasure.
+     */
+    static final class AspectRatioLayout extends Node {
+        private final Node child;
+        private final float aspectRatio;
+        private final boolean singlePass;
+        private final AspectRatioMeasure ratioMeasure = new AspectRatioMeasure();
+
+        AspectRatioLayout(Node child, float aspectRatio, boolean singlePass) {
+            this.child = child;
+            this.aspectRatio = aspectRatio;
+            this.singlePass = singlePass;
+        }
+
+        @Override
+        void measure(int widthSpec, int heightSpec) {
+            if (singlePass && ratioMeasure.resolveSpecs(widthSpec, heightSpec, aspectRatio, 0.01f)) {
+                child.measure(ratioMeasure.getWidth() | EXACTLY, ratioMeasure.getHeight() | EXACTLY);
+            } else {
+                child.measure(widthSpec, heightSpec);
+                if (ratioMeasure.resolve(child.measuredWidth, child.measuredHeight, aspectRatio, 0.01f)) {
+                    child.measure(ratioMeasure.getWidth() | EXACTLY, ratioMeasure.getHeight() | EXACTLY);
+                }
+            }
+            measuredWidth = child.measuredWidth;
+            measuredHeight = child.measuredHeight;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.peirra.stacked.benchmark;
+
+/**
+ * JVM stand-in for {@code android.graphics.Canvas} that only records what would have been drawn.
+ * <p>
+ * Every call folds its coordinates into a checksum so the JIT cannot drop the work that produced them.
+ */
+public final class RecordingCanvas {
+
+    private int drawCalls;
+    private float checksum;
+
+    public void drawLines(float[] pts, int offset, int count) {
+        drawCalls++;
+        float sum = 0;
+        for (int i = offset; i < offset + count; i++) {
+            sum += pts[i];
+        }
+        checksum += sum;
+    }
+
+    public void drawLines(float[] pts) {
+        drawLines(pts, 0, pts.length);
+    }
+
+    public void drawRect(float left, float top, float right, float bottom) {
+        drawCalls++;
+        checksum += left + top + right + bottom;
+    }
+
+    public int getDrawCalls() {
+        return drawCalls;
+    }
+
+    public float getChecksum() {
+        return checksum;
+    }
+
+    public void reset() {
+        drawCalls = 0;
+        checksum = 0;
+    }
+}
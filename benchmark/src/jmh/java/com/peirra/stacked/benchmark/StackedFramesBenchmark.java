@@ -0,0 +1,141 @@
+package com.peirra.stacked.benchmark;
+
+import com.peirra.stacked.FrameGeometry;
+import com.peirra.stacked.StackMeasure;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure, layout and draw paths of {@code StackedLayout} and {@code StackedImageView}.
+ * <p>
+ * Both views share the same frame code, so one suite covers them. Measure and layout run the
+ * {@link StackMeasure} math the views call, for a single child filling the view. The framework parts
+ * around it (child measurement, {@code resolveSizeAndState}) cannot run on a plain JVM and are left out.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StackedFramesBenchmark {
+
+    private static final int MAX_STROKE_WIDTH = 2;
+
+    @Param({"1", "10", "100", "1000"})
+    public int frameCount;
+
+    @Param({"8", "48"})
+    public float framePadding;
+
+    @Param({"110x146", "720x960"})
+    public String viewSize;
+
+    private int width;
+    private int height;
+    private int frameDelta;
+    private int left;
+    private int top;
+    private int right;
+    private int bottom;
+
+    private final StackMeasure stackMeasure = new StackMeasure();
+    private final FrameGeometry geometry = new FrameGeometry();
+    private final RecordingCanvas canvas = new RecordingCanvas();
+
+    private final float[] verticalLong = new float[4];
+    private final float[] verticalShort = new float[4];
+    private final float[] horizontalLong = new float[4];
+    private final float[] horizontalShort = new float[4];
+
+    @Setup
+    public void setUp() {
+        final int split = viewSize.indexOf('x');
+        width = Integer.parseInt(viewSize.substring(0, split));
+        height = Integer.parseInt(viewSize.substring(split + 1));
+        layout();
+    }
+
+    /**
+     * The view-owned part of onMeasure: frame padding removal and the stroke width.
+     */
+    @Benchmark
+    public int measure() {
+        final int measuredWidth = StackMeasure.measuredSize(width, 0, framePadding);
+        final int measuredHeight = StackMeasure.measuredSize(height, 0, framePadding);
+        return measuredWidth * 31 + measuredHeight + FrameGeometry.strokeWidth(framePadding, frameCount, MAX_STROKE_WIDTH);
+    }
+
+    /**
+     * onLayout followed by the frame rebuild, the same work setFrameCount triggers.
+     */
+    @Benchmark
+    public int layout() {
+        frameDelta = FrameGeometry.frameDelta(framePadding, frameCount);
+        stackMeasure.layoutChild(0, 0, width, height, 0, 0, 0, 0, width, height, framePadding);
+        left = stackMeasure.getLeft();
+        top = stackMeasure.getTop();
+        right = stackMeasure.getRight();
+        bottom = stackMeasure.getBottom();
+        geometry.setStack(left, top, right, bottom, frameCount, framePadding);
+        return geometry.getLineCount();
+    }
+
+    /**
+     * Current drawFrames: one drawLines call over the packed buffer.
+     */
+    @Benchmark
+    public float drawFrames() {
+        canvas.reset();
+        canvas.drawLines(geometry.getLines(), 0, geometry.getLineCount());
+        return canvas.getChecksum();
+    }
+
+    /**
+     * The original drawFrames loop, four drawLines calls per layer recomputed on every draw. Kept as the
+     * baseline the packed buffer is compared against.
+     */
+    @Benchmark
+    public float drawFramesPerLayer() {
+        canvas.reset();
+        canvas.drawRect(left, top, right, bottom);
+        int fl = left, ft = top, fr = right, fb = bottom;
+        for (int i = 1; i < frameCount; i++) {
+            fl += frameDelta;
+            fr += frameDelta;
+            ft -= frameDelta;
+            fb -= frameDelta;
+            verticalLong[0] = fr;
+            verticalLong[1] = ft;
+            verticalLong[2] = fr;
+            verticalLong[3] = fb;
+
+            verticalShort[0] = fl;
+            verticalShort[1] = ft;
+            verticalShort[2] = fl;
+            verticalShort[3] = ft + frameDelta;
+
+            horizontalLong[0] = fl;
+            horizontalLong[1] = ft;
+            horizontalLong[2] = fr;
+            horizontalLong[3] = ft;
+
+            horizontalShort[0] = fr - frameDelta;
+            horizontalShort[1] = fb;
+            horizontalShort[2] = fr;
+            horizontalShort[3] = fb;
+
+            canvas.drawLines(verticalLong);
+            canvas.drawLines(verticalShort);
+            canvas.drawLines(horizontalLong);
+            canvas.drawLines(horizontalShort);
+        }
+        return canvas.getChecksum();
+    }
+}
@@ -0,0 +1,416 @@
+package com.peirra.stacked.renderer;
+
+import com.peirra.stacked.StackAtlasWriter;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Command line batch renderer for stacked poster thumbnails.
+ * <p>
+ * Sources are directories (every image file directly inside) or manifests ({@code @list.txt}, one path per
+ * line) and are streamed, never listed up front. Every source is decoded, rendered and encoded by its own
+ * task on a {@link ForkJoinPool}. Before decoding, a task reserves the bytes its source and output will
+ * occupy from a shared budget so the working set stays bounded however many images are queued; the number
+ * of queued tasks is bounded as well. Tasks share nothing but the budget and the counters, which lets the
+ * throughput grow with the number of cores.
+ * <p>
+ * With {@code --atlas} the thumbnails are packed into a {@link com.peirra.stacked.StackAtlas} keyed by the
+ * source file name without extension instead of being written as separate PNG files.
+ *
+ * <pre>
+ * usage: BatchRenderer [options] &lt;dir | @manifest&gt;...
+ *   --size WxH        output size in pixels (default 220x292)
+ *   --padding PX      view padding on every side (default 0)
+ *   --frame-padding PX space taken by the frames (default 16)
+ *   --count N         number of frames (default 6)
+ *   --color COLOR     frame color, #RRGGBB or #AARRGGBB (default #FF000000)
+ *   --out DIR         output directory (default ./stacked)
+ *   --atlas FILE      write a single atlas file instead of PNG files
+ *   --page WxH        atlas page size (default 2048x2048)
+ *   --threads N       worker threads (default: available processors)
+ *   --memory MB       in-flight memory budget (default: half the max heap)
+ * </pre>
+ */
+public final class BatchRenderer {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final int KB = 1024;
+
+    private final StackRenderer renderer;
+    private final File outDir;
+    private final ForkJoinPool pool;
+    private final Semaphore memory;
+    private final int memoryPermits;
+    private final Semaphore queued;
+    private StackAtlasWriter atlas;
+
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong pixels = new AtomicLong();
+
+    public BatchRenderer(StackRenderer renderer, File outDir, int threads, long memoryBudget) {
+        this.renderer = renderer;
+        this.outDir = outDir;
+        this.pool = new ForkJoinPool(threads);
+        //permits are kilobytes so budgets of many gigabytes still fit an int
+        this.memoryPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, memoryBudget / KB));
+        this.memory = new Semaphore(memoryPermits);
+        this.queued = new Semaphore(threads * 4);
+    }
+
+    /**
+     * Packs the thumbnails into the atlas instead of writing PNG files, the caller closes it.
+     */
+    public void setAtlas(StackAtlasWriter atlas) {
+        this.atlas = atlas;
+    }
+
+    /**
+     * Renders every source and blocks until all of them are written.
+     */
+    public void renderAll(Iterable<File> sources) throws InterruptedException {
+        //the disk cache of ImageIO serializes streams on a shared temp directory
+        ImageIO.setUseCache(false);
+        for (File source : sources) {
+            queued.acquire();
+            pool.execute(new RenderTask(source));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+
+    public long getRendered() {
+        return rendered.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getPixels() {
+        return pixels.get();
+    }
+
+    private final class RenderTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final File source;
+
+        RenderTask(File source) {
+            this.source = source;
+        }
+
+        @Override
+        protected void compute() {
+            int permits = 0;
+            try {
+                final long sourceBytes = readSourceBytes(source);
+                permits = (int) Math.min(memoryPermits, (sourceBytes + renderer.outputBytes()) / KB + 1);
+                acquire(permits);
+
+                final BufferedImage image = ImageIO.read(source);
+                if (image == null) {
+                    throw new IOException("No image reader for " + source);
+                }
+                final BufferedImage out = renderer.render(image);
+                if (atlas != null) {
+                    final int w = out.getWidth();
+                    final int h = out.getHeight();
+                    final int[] argb = out.getRGB(0, 0, w, h, null, 0, w);
+                    synchronized (atlas) {
+                        atlas.add(baseName(source), w, h, argb);
+                    }
+                } else if (!ImageIO.write(out, "png", new File(outDir, baseName(source) + ".png"))) {
+                    throw new IOException("No png writer");
+                }
+                rendered.incrementAndGet();
+                pixels.addAndGet(out.getWidth() * (long) out.getHeight());
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                System.err.println("Failed " + source + ": " + e);
+            } finally {
+                if (permits > 0) {
+                    memory.release(permits);
+                }
+                queued.release();
+            }
+        }
+
+        /**
+         * Blocks for memory without starving the pool, see {@link ForkJoinPool#managedBlock}.
+         */
+        private void acquire(final int permits) throws InterruptedException {
+            if (memory.tryAcquire(permits)) {
+                return;
+            }
+            ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+                private boolean acquired;
+
+                @Override
+                public boolean block() throws InterruptedException {
+                    memory.acquire(permits);
+                    acquired = true;
+                    return true;
+                }
+
+                @Override
+                public boolean isReleasable() {
+                    return acquired || (acquired = memory.tryAcquire(permits));
+                }
+            });
+        }
+    }
+
+    /**
+     * @return bytes of the decoded source, read from its header only
+     */
+    static long readSourceBytes(File source) throws IOException {
+        final ImageInputStream in = ImageIO.createImageInputStream(source);
+        if (in == null) {
+            throw new IOException("Cannot open " + source);
+        }
+        try {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                throw new IOException("No image reader for " + source);
+            }
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return 4L * reader.getWidth(0) * reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    static String baseName(File source) {
+        final String name = source.getName();
+        final int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * Parses #RRGGBB and #AARRGGBB like {@code android.graphics.Color.parseColor}.
+     */
+    static int parseColor(String color) {
+        if (color.length() < 1 || color.charAt(0) != '#') {
+            throw new IllegalArgumentException("Unknown color " + color);
+        }
+        final long value = Long.parseLong(color.substring(1), 16);
+        if (color.length() == 7) {
+            return (int) (value | 0xff000000L);
+        } else if (color.length() == 9) {
+            return (int) value;
+        }
+        throw new IllegalArgumentException("Unknown color " + color);
+    }
+
+    /**
+     * Lazily walks the given directories and manifests.
+     */
+    static Iterable<File> sources(final String[] inputs, final int from) {
+        return new Iterable<File>() {
+            @Override
+            public Iterator<File> iterator() {
+                return new SourceIterator(inputs, from);
+            }
+        };
+    }
+
+    private static final class SourceIterator implements Iterator<File> {
+        private final String[] inputs;
+        private int index;
+        private DirectoryStream<Path> directory;
+        private Iterator<Path> files;
+        private BufferedReader manifest;
+        private File next;
+
+        SourceIterator(String[] inputs, int from) {
+            this.inputs = inputs;
+            this.index = from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (next == null) {
+                    if (files != null && files.hasNext()) {
+                        final Path path = files.next();
+                        if (Files.isRegularFile(path)) {
+                            next = path.toFile();
+                        }
+                    } else if (manifest != null) {
+                        final String line = manifest.readLine();
+                        if (line == null) {
+                            manifest.close();
+                            manifest = null;
+                        } else if (line.trim().length() > 0 && !line.startsWith("#")) {
+                            next = new File(line.trim());
+                        }
+                    } else {
+                        if (directory != null) {
+                            directory.close();
+                            directory = null;
+                            files = null;
+                        }
+                        if (index >= inputs.length) {
+                            return false;
+                        }
+                        open(inputs[index++]);
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public File next() {
+            if (!hasNext()) {
+                throw new java.util.NoSuchElementException();
+            }
+            final File file = next;
+            next = null;
+            return file;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private void open(String input) throws IOException {
+            if (input.startsWith("@")) {
+                manifest = new BufferedReader(new InputStreamReader(new FileInputStream(input.substring(1)), UTF_8));
+            } else {
+                directory = Files.newDirectoryStream(new File(input).toPath());
+                files = directory.iterator();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int width = 220;
+        int height = 292;
+        int padding = 0;
+        float framePadding = 16;
+        int count = 6;
+        int color = 0xff000000;
+        File out = new File("stacked");
+        int threads = Runtime.getRuntime().availableProcessors();
+        long memory = Runtime.getRuntime().maxMemory() / 2;
+        File atlas = null;
+        int pageWidth = 2048;
+        int pageHeight = 2048;
+
+        int i = 0;
+        for (; i < args.length && args[i].startsWith("--"); i += 2) {
+            if (i + 1 >= args.length) {
+                usage("Missing value for " + args[i]);
+            }
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "--size":
+                    final int[] size = parseSize(value);
+                    width = size[0];
+                    height = size[1];
+                    break;
+                case "--atlas":
+                    atlas = new File(value);
+                    break;
+                case "--page":
+                    final int[] page = parseSize(value);
+                    pageWidth = page[0];
+                    pageHeight = page[1];
+                    break;
+                case "--padding":
+                    padding = Integer.parseInt(value);
+                    break;
+                case "--frame-padding":
+                    framePadding = Float.parseFloat(value);
+                    break;
+                case "--count":
+                    count = Integer.parseInt(value);
+                    break;
+                case "--color":
+                    color = parseColor(value);
+                    break;
+                case "--out":
+                    out = new File(value);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "--memory":
+                    memory = Long.parseLong(value) * KB * KB;
+                    break;
+                default:
+                    usage("Unknown option " + args[i]);
+            }
+        }
+        if (i >= args.length) {
+            usage("No sources given");
+        }
+        if (atlas == null && !out.isDirectory() && !out.mkdirs()) {
+            usage("Cannot create " + out);
+        }
+
+        final BatchRenderer batch = new BatchRenderer(
+                new StackRenderer(width, height, padding, framePadding, count, color), out, threads, memory);
+        final StackAtlasWriter atlasWriter = atlas != null ? new StackAtlasWriter(atlas, pageWidth, pageHeight) : null;
+        batch.setAtlas(atlasWriter);
+        final long start = System.nanoTime();
+        batch.renderAll(sources(args, i));
+        if (atlasWriter != null) {
+            atlasWriter.close();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.println(String.format(Locale.US,
+                "rendered %d, failed %d in %.2fs on %d threads: %.1f images/s, %.1f Mpx/s",
+                batch.getRendered(), batch.getFailed(), seconds, threads,
+                batch.getRendered() / seconds, batch.getPixels() / seconds / 1e6));
+        if (batch.getFailed() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void usage(String error) {
+        System.err.println(error);
+        System.err.println("usage: BatchRenderer [--size WxH] [--padding PX] [--frame-padding PX] [--count N]"
+                + " [--color #AARRGGBB] [--out DIR | --atlas FILE [--page WxH]] [--threads N] [--memory MB]"
+                + " <dir | @manifest>...");
+        System.exit(2);
+    }
+
+    private static int[] parseSize(String value) {
+        final String[] size = value.toLowerCase(Locale.US).split("x");
+        if (size.length != 2) {
+            usage("Size must be WxH");
+        }
+        return new int[]{Integer.parseInt(size[0]), Integer.parseInt(size[1])};
+    }
+}
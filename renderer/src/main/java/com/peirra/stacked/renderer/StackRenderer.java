@@ -0,0 +1,96 @@
+package com.peirra.stacked.renderer;
+
+import com.peirra.stacked.FrameGeometry;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Renders a stacked image with Java2D the way {@code StackedImageView} draws it on a device: the image is
+ * scaled into the bounds left after the view padding and {@code framePadding} (FIT_XY), with the frames
+ * drawn underneath from the same {@link FrameGeometry}.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class StackRenderer {
+
+    private static final int MAX_STROKE_WIDTH = 2;
+
+    private final int width;
+    private final int height;
+    private final int padding;
+    private final float framePadding;
+    private final int frameCount;
+    private final int frameColor;
+
+    /**
+     * @param padding    view padding on every side, in pixels
+     * @param frameColor ARGB color of the frames
+     */
+    public StackRenderer(int width, int height, int padding, float framePadding, int frameCount, int frameColor) {
+        if (frameCount < 1) {
+            throw new IllegalArgumentException("frameCount must be at least 1");
+        }
+        this.width = width;
+        this.height = height;
+        this.padding = padding;
+        this.framePadding = framePadding;
+        this.frameCount = frameCount;
+        this.frameColor = frameColor;
+    }
+
+    public BufferedImage render(BufferedImage source) {
+        final int left = (int) (padding + framePadding);
+        final int top = (int) (padding + framePadding);
+        final int right = (int) (width - padding - framePadding);
+        final int bottom = (int) (height - padding - framePadding);
+
+        final BufferedImage out = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D g = out.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+
+            final FrameGeometry geometry = new FrameGeometry();
+            geometry.setStack(left, top, right, bottom, frameCount, framePadding);
+            g.setColor(new Color(frameColor, true));
+            if (geometry.hasBand()) {
+                final float[] b = geometry.getBand();
+                final Path2D.Float band = new Path2D.Float();
+                band.moveTo(b[0], b[1]);
+                for (int i = 2; i < FrameGeometry.FLOATS_PER_BAND; i += 2) {
+                    band.lineTo(b[i], b[i + 1]);
+                }
+                band.closePath();
+                g.fill(band);
+            }
+            g.setStroke(new BasicStroke(FrameGeometry.strokeWidth(framePadding, frameCount, MAX_STROKE_WIDTH),
+                    BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER));
+            final float[] lines = geometry.getLines();
+            final Line2D.Float line = new Line2D.Float();
+            for (int i = 0; i < geometry.getLineCount(); i += 4) {
+                line.setLine(lines[i], lines[i + 1], lines[i + 2], lines[i + 3]);
+                g.draw(line);
+            }
+
+            g.drawImage(source, left, top, right - left, bottom - top, null);
+        } finally {
+            g.dispose();
+        }
+        return out;
+    }
+
+    /**
+     * @return bytes held by one rendered image
+     */
+    public long outputBytes() {
+        return 4L * width * height;
+    }
+}
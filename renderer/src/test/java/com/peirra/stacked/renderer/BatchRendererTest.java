@@ -0,0 +1,49 @@
+package com.peirra.stacked.renderer;
+
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.*;
+
+public class BatchRendererTest {
+
+    @Test
+    public void parseColor_addsOpaqueAlphaToRgb() throws Exception {
+        assertEquals(0xffff0000, BatchRenderer.parseColor("#ff0000"));
+        assertEquals(0xff3080C0, BatchRenderer.parseColor("#3080c0"));
+    }
+
+    @Test
+    public void parseColor_keepsArgb() throws Exception {
+        assertEquals(0x80102030, BatchRenderer.parseColor("#80102030"));
+        assertEquals(0x00000000, BatchRenderer.parseColor("#00000000"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseColor_rejectsMissingHash() throws Exception {
+        BatchRenderer.parseColor("ff0000");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseColor_rejectsShortForm() throws Exception {
+        BatchRenderer.parseColor("#f00");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseColor_rejectsNames() throws Exception {
+        BatchRenderer.parseColor("red");
+    }
+
+    @Test
+    public void baseName_dropsTheLastExtension() throws Exception {
+        assertEquals("poster", BatchRenderer.baseName(new File("posters/poster.jpg")));
+        assertEquals("poster.final", BatchRenderer.baseName(new File("poster.final.png")));
+    }
+
+    @Test
+    public void baseName_keepsNamesWithoutExtension() throws Exception {
+        assertEquals("poster", BatchRenderer.baseName(new File("posters/poster")));
+        assertEquals(".poster", BatchRenderer.baseName(new File(".poster")));
+    }
+}
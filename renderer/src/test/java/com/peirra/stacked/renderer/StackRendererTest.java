@@ -0,0 +1,68 @@
+package com.peirra.stacked.renderer;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+
+import static org.junit.Assert.*;
+
+public class StackRendererTest {
+
+    private static final int FRAME_COLOR = 0xffff0000;
+    private static final int IMAGE_COLOR = 0xff0000ff;
+
+    @Test
+    public void render_drawsImageAndFrames() throws Exception {
+        // 100x120 view without padding: image at 10,10 - 90,110, five layers 2px apart up to 18,2 - 98,102
+        final StackRenderer renderer = new StackRenderer(100, 120, 0, 10, 5, FRAME_COLOR);
+        final BufferedImage out = renderer.render(solid(40, 40, IMAGE_COLOR));
+        assertEquals(100, out.getWidth());
+        assertEquals(120, out.getHeight());
+        assertEquals(BufferedImage.TYPE_INT_ARGB, out.getType());
+
+        // the source is scaled over the whole image area
+        assertEquals(IMAGE_COLOR, out.getRGB(50, 60));
+        assertEquals(IMAGE_COLOR, out.getRGB(11, 108));
+
+        // the outermost frame, anti-aliased across two rows
+        assertFrame(out.getRGB(50, 2) | out.getRGB(50, 1));
+        assertFrame(out.getRGB(98, 50) | out.getRGB(97, 50));
+
+        // nothing below and left of the stack
+        assertEquals(0, out.getRGB(2, 118) >>> 24);
+        assertEquals(0, out.getRGB(5, 5) >>> 24);
+    }
+
+    @Test
+    public void render_subPixelLayersFillTheBand() throws Exception {
+        // 20 layers over 8px are drawn as a band
+        final StackRenderer renderer = new StackRenderer(100, 120, 0, 8, 20, FRAME_COLOR);
+        final BufferedImage out = renderer.render(solid(10, 10, IMAGE_COLOR));
+        assertEquals(FRAME_COLOR, out.getRGB(50, 6));
+        assertEquals(FRAME_COLOR, out.getRGB(94, 60));
+    }
+
+    @Test
+    public void outputBytes_isOneIntPerPixel() throws Exception {
+        assertEquals(4L * 220 * 292, new StackRenderer(220, 292, 4, 16, 6, FRAME_COLOR).outputBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_rejectsEmptyStacks() throws Exception {
+        new StackRenderer(100, 120, 0, 10, 0, FRAME_COLOR);
+    }
+
+    private static void assertFrame(int argb) {
+        assertTrue(Integer.toHexString(argb), (argb >>> 24) > 0 && (argb & 0x00ff0000) != 0 && (argb & 0xff) == 0);
+    }
+
+    private static BufferedImage solid(int width, int height, int argb) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, argb);
+            }
+        }
+        return image;
+    }
+}